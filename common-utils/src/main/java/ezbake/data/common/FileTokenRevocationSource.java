@@ -0,0 +1,52 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Reads revoked token signatures from a UTF-8 text file, one signature per line. Blank lines and lines starting with
+ * {@code #} are ignored. The file is read again on every load, so it can be replaced while the application runs.
+ */
+public class FileTokenRevocationSource implements TokenRevocationSource {
+    private final File file;
+
+    public FileTokenRevocationSource(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public Set<String> load() throws IOException {
+        final Set<String> signatures = new HashSet<>();
+        for (final String line : Files.readLines(file, Charsets.UTF_8)) {
+            final String signature = line.trim();
+            if (!signature.isEmpty() && !signature.startsWith("#")) {
+                signatures.add(signature);
+            }
+        }
+        return signatures;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,48 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.util.Properties;
+
+import com.google.common.base.Function;
+
+import ezbake.security.client.EzbakeSecurityClient;
+
+/**
+ * Holds one long-lived {@link EzbakeSecurityClient} per application security id, so callers that validate tokens on
+ * every request share a client instead of paying for its configuration and SSL setup each time. Clients are created
+ * on first use and stay open until {@link #close()}, which {@link #registerShutdownHook()} arranges to happen when
+ * the JVM exits. See {@link SharedClients} for how clients are leased and closed.
+ */
+public class SecurityClientHolder extends SharedClients<EzbakeSecurityClient> {
+    private static final Function<Properties, EzbakeSecurityClient> CREATE_CLIENT =
+            new Function<Properties, EzbakeSecurityClient>() {
+                @Override
+                public EzbakeSecurityClient apply(Properties config) {
+                    return new EzbakeSecurityClient(config);
+                }
+            };
+
+    public SecurityClientHolder() {
+        this(CREATE_CLIENT);
+    }
+
+    /**
+     * @param factory creates the security client for a security id from the first configuration seen for it
+     */
+    public SecurityClientHolder(Function<? super Properties, ? extends EzbakeSecurityClient> factory) {
+        super(factory);
+    }
+}
@@ -0,0 +1,250 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+
+import ezbake.configuration.constants.EzBakePropertyConstants;
+
+/**
+ * Holds one long-lived client per application security id, created from the first configuration seen for that id.
+ * Callers borrow a client with {@link #acquire} and give it back by closing the returned {@link Lease}. Closing a
+ * client through the holder removes it at once, so later leases get a new client, but the old client is only closed
+ * once every outstanding lease on it has been closed; a caller never finds its client closed under it.
+ *
+ * Clients are keyed by security id alone. A later configuration with the same security id but other settings still
+ * gets the existing client, built from the first configuration; the holder logs a warning the first time that happens
+ * for each client. Use {@link #close(Properties)} to replace a client whose configuration has changed.
+ *
+ * {@link #registerShutdownHook()} arranges for the held clients to be closed when the JVM exits. The hook itself is
+ * only added once a client is created, so a holder that is never used adds nothing to the JVM.
+ *
+ * The holder is thread-safe; the clients it creates must be safe to share between threads.
+ *
+ * @param <C> the type of client held
+ */
+public class SharedClients<C extends Closeable> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SharedClients.class);
+
+    private final ConcurrentMap<String, Entry<C>> clients = new ConcurrentHashMap<>();
+    private final Function<? super Properties, ? extends C> factory;
+    private volatile boolean closeOnShutdown;
+    private Thread shutdownHook;
+
+    /**
+     * @param factory creates the client for a security id from the first configuration seen for it
+     */
+    public SharedClients(Function<? super Properties, ? extends C> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Leases the client for the configuration's security id, creating it from the configuration if none is held.
+     * Close the lease once done with the client.
+     */
+    public Lease<C> acquire(Properties config) {
+        final String securityId = getSecurityId(config);
+        while (true) {
+            Entry<C> entry = clients.get(securityId);
+            if (entry == null) {
+                final Entry<C> created = new Entry<>(factory.apply(config), config);
+                entry = clients.putIfAbsent(securityId, created);
+                if (entry == null) {
+                    logger.info("Created client for security id {}", securityId);
+                    entry = created;
+                    if (closeOnShutdown) {
+                        addShutdownHook();
+                    }
+                } else {
+                    created.release();
+                }
+            }
+            if (entry.retain()) {
+                entry.checkConfig(config, securityId);
+                return new Lease<>(entry);
+            }
+            // Closed since we looked it up; it is already out of the map, so the next pass creates a new one.
+        }
+    }
+
+    /**
+     * Removes the client for the configuration's security id, if one is held, and closes it once its outstanding
+     * leases are closed. The next {@link #acquire} for that id creates a new client.
+     */
+    public void close(Properties config) {
+        final Entry<C> entry = clients.remove(getSecurityId(config));
+        if (entry != null) {
+            entry.release();
+        }
+    }
+
+    /**
+     * Removes every client held, closing each once its outstanding leases are closed. The holder can still be used
+     * afterwards; clients are created again as needed.
+     */
+    @Override
+    public void close() {
+        for (final String securityId : clients.keySet()) {
+            final Entry<C> entry = clients.remove(securityId);
+            if (entry != null) {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Closes the held clients when the JVM shuts down. The shutdown hook is added when the first client is created, or
+     * now if clients are already held. Calling this more than once has no further effect.
+     */
+    public synchronized void registerShutdownHook() {
+        closeOnShutdown = true;
+        if (!clients.isEmpty()) {
+            addShutdownHook();
+        }
+    }
+
+    /**
+     * Undoes {@link #registerShutdownHook()}, removing the shutdown hook if it was added. The caller then closes the
+     * holder itself.
+     */
+    public synchronized void removeShutdownHook() {
+        closeOnShutdown = false;
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (final IllegalStateException e) {
+                // Already shutting down, so the hook is running or about to
+            }
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * @return whether a shutdown hook has been added for this holder
+     */
+    synchronized boolean isShutdownHookAdded() {
+        return shutdownHook != null;
+    }
+
+    private synchronized void addShutdownHook() {
+        if (closeOnShutdown && shutdownHook == null) {
+            shutdownHook = new Thread("shared-clients-shutdown") {
+                @Override
+                public void run() {
+                    SharedClients.this.close();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * @return the number of clients held
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    private static String getSecurityId(Properties config) {
+        final String securityId = config.getProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID);
+        return securityId == null ? "" : securityId;
+    }
+
+    /**
+     * A borrowed client. Closing the lease gives the client back; it does not close the client unless the holder has
+     * already let go of it.
+     *
+     * @param <C> the type of client leased
+     */
+    public static final class Lease<C extends Closeable> implements Closeable {
+        private final Entry<C> entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Entry<C> entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return the leased client; do not use it after closing the lease
+         */
+        public C getClient() {
+            return entry.client;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * A held client and its reference count: one reference for the holder's map plus one per open lease. The client
+     * is closed when the count reaches zero, after which it can no longer be retained.
+     */
+    private static final class Entry<C extends Closeable> {
+        private final C client;
+        private final Properties config;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean warned = new AtomicBoolean();
+
+        Entry(C client, Properties config) {
+            this.client = client;
+            this.config = new Properties();
+            this.config.putAll(config);
+        }
+
+        boolean retain() {
+            while (true) {
+                final int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    client.close();
+                } catch (final IOException e) {
+                    logger.warn("Error closing client", e);
+                }
+            }
+        }
+
+        void checkConfig(Properties other, String securityId) {
+            if (!warned.get() && !config.equals(other) && warned.compareAndSet(false, true)) {
+                logger.warn("Reusing the client for security id {} created from a different configuration; close it "
+                        + "to apply the new configuration", securityId);
+            }
+        }
+    }
+}
@@ -14,11 +14,10 @@
 
 package ezbake.data.common;
 
-import java.lang.reflect.Constructor;
 import java.util.List;
 
+import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
@@ -26,6 +25,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ezbake.base.thrift.EzBakeBaseService;
+import ezbake.data.common.thrift.ServiceKey;
+import ezbake.data.common.thrift.ThriftCallback;
+import ezbake.data.common.thrift.ThriftClientFactory;
+import ezbake.data.common.thrift.ThriftClientPool;
+import ezbake.data.common.thrift.ThriftClientPoolConfig;
 import ezbake.ezdiscovery.ServiceDiscoveryClient;
 
 public class ThriftClient {
@@ -34,12 +38,14 @@ public class ThriftClient {
     private static EzBakeBaseService.Client client = null;
     private static String clientClassName = "";
     private static String DATASET = "";
+    private static ThriftClientPool<? extends EzBakeBaseService.Client> pool = null;
 
     TTransport transport = null;
 
-    public static void create(String serviceClientClassName, String service) {
+    public static synchronized void create(String serviceClientClassName, String service) {
         clientClassName = serviceClientClassName;
         DATASET = service;
+        closePool();
     }
 
     private ThriftClient(String zookeeper, String appName) throws Exception {
@@ -55,8 +61,51 @@ public class ThriftClient {
         }
     }
 
+    /**
+     * Returns the process-wide pool of clients for the service class and dataset given to {@link #create}, using the
+     * "zookeeper" system property for service discovery.
+     */
+    public static synchronized ThriftClientPool<? extends EzBakeBaseService.Client> getPool() throws TException {
+        if (pool == null) {
+            final ThriftClientFactory<? extends EzBakeBaseService.Client> clientFactory;
+            try {
+                clientFactory = ThriftClientFactory.forClassName(clientClassName);
+            } catch (final ClassNotFoundException e) {
+                throw new TException("Class Not Found Exception with Message : " + e.getMessage(), e);
+            }
+            pool = new ThriftClientPool<>(System.getProperty("zookeeper"), clientFactory,
+                    new ThriftClientPoolConfig());
+        }
+        return pool;
+    }
+
+    /**
+     * Runs the callback with a pooled client for the "appname" system property and the dataset given to
+     * {@link #create}. Safe to call from any number of threads.
+     *
+     * @throws TException if the call fails, or the "appname" system property is not set
+     */
+    public static <R> R execute(ThriftCallback<EzBakeBaseService.Client, R> callback) throws TException {
+        final String appName = System.getProperty("appname");
+        if (appName == null) {
+            throw new TException("The appname system property must be set to call " + DATASET);
+        }
+        return getPool().execute(new ServiceKey(appName, DATASET), callback);
+    }
+
+    /**
+     * Returns the shared client, reconnecting first if its connection has been closed.
+     *
+     * @deprecated the returned client is shared by every caller and Thrift clients are not thread-safe; use
+     * {@link #execute(ThriftCallback)} or {@link #getPool()} instead.
+     */
+    @Deprecated
     @SuppressWarnings("unused")
-    public static EzBakeBaseService.Client getInstance() throws Exception {
+    public static synchronized EzBakeBaseService.Client getInstance() throws Exception {
+        if (client != null && !client.getInputProtocol().getTransport().isOpen()) {
+            logger.info("Thrift client connection closed, reconnecting");
+            closeClient();
+        }
         if (client == null) {
             new ThriftClient(System.getProperty("zookeeper"), System.getProperty("appname"));
         }
@@ -113,26 +162,7 @@ public class ThriftClient {
 
         if (transport != null) {
             try {
-                TBinaryProtocol tbp = null;
-                final Class<?> cl1 = Class.forName("org.apache.thrift.protocol.TBinaryProtocol");
-
-                if (cl1 != null) {
-                    final Constructor<?> cons1 = cl1.getConstructor(TTransport.class);
-                    if (cons1 != null) {
-                        tbp = (TBinaryProtocol) cons1.newInstance(transport);
-                    }
-                }
-
-                if (tbp != null) {
-                    final Class<?> cl = Class.forName(clientClassName);
-                    if (cl1 != null) {
-                        final Constructor<?> cons = cl.getConstructor(TProtocol.class);
-                        if (cons != null) {
-                            client = (EzBakeBaseService.Client) cons.newInstance(tbp);
-                        }
-                    }
-                }
-
+                client = ThriftClientFactory.forClassName(clientClassName).newClient(new TBinaryProtocol(transport));
             } catch (final ClassNotFoundException e) {
                 logger.error("Class Not Found Exception with Message : " + e.getMessage());
             }
@@ -147,11 +177,26 @@ public class ThriftClient {
         return "ThriftClient{" + "client=" + client + '}';
     }
 
-    public static void close() {
+    /**
+     * Closes the shared client's connection and the pool.
+     */
+    public static synchronized void close() {
+        closeClient();
+        closePool();
+    }
+
+    private static void closeClient() {
         if (client != null) {
+            client.getInputProtocol().getTransport().close();
             client = null;
         }
+    }
 
+    private static synchronized void closePool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
     }
 
 }
@@ -0,0 +1,53 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import com.google.common.base.Objects;
+
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * Identifies a security token presented to an application. Two keys are equal only if their tokens are equal in every
+ * field and were presented to the same security id.
+ */
+final class TokenKey {
+    private final EzSecurityToken token;
+    private final String securityId;
+    private final int hash;
+
+    TokenKey(EzSecurityToken token, String securityId) {
+        this.token = token;
+        this.securityId = securityId;
+        // Generated Thrift structs may not hash their fields, and the signature already identifies the token
+        this.hash = Objects.hashCode(token.isSetValidity() ? token.getValidity().getSignature() : null, securityId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenKey)) {
+            return false;
+        }
+        final TokenKey other = (TokenKey) o;
+        return hash == other.hash && Objects.equal(securityId, other.securityId) && token.equals(other.token);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,187 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * The set of revoked tokens, identified by signature, so that revoked tokens can be rejected without asking a remote
+ * service on every request. Most tokens are not revoked, so lookups go through a bloom filter first and only its
+ * positives are checked against the exact set; a token that is not revoked usually costs a few hashes.
+ *
+ * Revocations are loaded from a {@link TokenRevocationSource}, either on demand with {@link #refresh()} or
+ * periodically once {@link #startRefreshing} is called. A refresh replaces the whole set at once, and a failed
+ * refresh keeps the revocations loaded before it.
+ */
+public class TokenRevocationList implements Closeable {
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final TokenRevocationSource source;
+    private final double falsePositiveProbability;
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private volatile Revocations revocations = Revocations.NONE;
+    private volatile long lastRefreshMillis;
+    private ScheduledExecutorService refresher;
+
+    public TokenRevocationList(TokenRevocationSource source) {
+        this(source, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * @param falsePositiveProbability how often the bloom filter may send a token that is not revoked to the exact
+     * set; lower values use more memory
+     */
+    public TokenRevocationList(TokenRevocationSource source, double falsePositiveProbability) {
+        this.source = source;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    /**
+     * @return whether the token's signature has been revoked; unsigned tokens are never revoked
+     */
+    public boolean isRevoked(EzSecurityToken token) {
+        return token.isSetValidity() && isRevoked(token.getValidity().getSignature());
+    }
+
+    /**
+     * @return whether the signature has been revoked
+     */
+    public boolean isRevoked(String signature) {
+        final Revocations current = revocations;
+        if (signature == null || current.signatures.isEmpty() || !current.filter.mightContain(signature)) {
+            return false;
+        }
+        if (current.signatures.contains(signature)) {
+            rejections.incrementAndGet();
+            return true;
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Loads the revocations from the source, replacing the ones loaded before.
+     *
+     * @throws IOException if the source cannot be read; the revocations loaded before are kept
+     */
+    public synchronized void refresh() throws IOException {
+        final Set<String> signatures = ImmutableSet.copyOf(source.load());
+        final BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8),
+                Math.max(signatures.size(), 1), falsePositiveProbability);
+        for (final String signature : signatures) {
+            filter.put(signature);
+        }
+        revocations = new Revocations(filter, signatures);
+        lastRefreshMillis = System.currentTimeMillis();
+        logger.debug("Loaded {} revoked tokens from {}", signatures.size(), source);
+    }
+
+    /**
+     * Loads the revocations now and then again every interval, on a background thread, until {@link #close()}.
+     * Failures after the first load are logged and retried at the next interval.
+     *
+     * @throws IOException if the first load fails; nothing is scheduled then
+     */
+    public synchronized void startRefreshing(long intervalMillis) throws IOException {
+        if (refresher != null) {
+            throw new IllegalStateException("Already refreshing revocations from " + source);
+        }
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("token-revocation-refresh-%d").build());
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (final Exception e) {
+                    logger.warn("Could not refresh revoked tokens from " + source + ", keeping the last "
+                            + size() + " loaded", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops refreshing. The revocations loaded last are still checked.
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * @return the number of revoked tokens loaded
+     */
+    public int size() {
+        return revocations.signatures.size();
+    }
+
+    /**
+     * @return when the revocations were last loaded, in milliseconds since the epoch, or 0 if they never were
+     */
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    /**
+     * @return the number of lookups that found the token revoked
+     */
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    /**
+     * @return the number of lookups the bloom filter passed to the exact set for tokens that were not revoked
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+
+    private static final class Revocations {
+        static final Revocations NONE = new Revocations(null, ImmutableSet.<String>of());
+
+        final BloomFilter<CharSequence> filter;
+        final Set<String> signatures;
+
+        Revocations(BloomFilter<CharSequence> filter, Set<String> signatures) {
+            this.filter = filter;
+            this.signatures = signatures;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Supplies the tokens that have been revoked, for a {@link TokenRevocationList} to load.
+ */
+public interface TokenRevocationSource {
+
+    /**
+     * @return the signatures of every token currently revoked
+     * @throws IOException if the revocations cannot be read; the list keeps the revocations it loaded last
+     */
+    Set<String> load() throws IOException;
+}
@@ -17,52 +17,255 @@ package ezbake.data.common;
 import ezbake.base.thrift.EzSecurityToken;
 import ezbake.base.thrift.TokenType;
 import ezbake.configuration.constants.EzBakePropertyConstants;
+import ezbake.data.common.classification.ClassificationUtils;
 import ezbake.security.client.EzbakeSecurityClient;
-import org.apache.commons.lang.StringUtils;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TokenUtils {
     private static final Logger logger = LoggerFactory.getLogger(TokenUtils.class);
 
     private static String purgeAppSecurityId;
 
+    private static final TokenValidationCache validationCache = new TokenValidationCache();
+
+    private static volatile SecurityClientHolder securityClients = new SecurityClientHolder();
+
+    private static volatile TokenRevocationList revocationList;
+
+    static {
+        securityClients.registerShutdownHook();
+    }
+
     /**
      * Calls EzbakeSecurityClient's validateReceivedToken method as well as checks to see if the issuedTo securityId ==
      * the app securityId. Note that Common Services should NOT be calling this method; instead call the
      * securityClient's validateReceivedToken method only.
      *
+     * Tokens that pass are remembered until they expire, so presenting the same token again is a cache lookup; see
+     * {@link #getValidationCache()}. Tokens in the revocation list, if one is set, are rejected first, even if they
+     * passed before; see {@link #setRevocationList}.
+     *
      * @param token  EzSecurityToken
      * @param config Properties
      * @throws TException
      */
     public static void validateSecurityToken(EzSecurityToken token, Properties config) throws TException {
-        @SuppressWarnings("resource")
-        final EzbakeSecurityClient client = new EzbakeSecurityClient(config);
-        try {
-            logger.debug(config.toString());
-            client.validateReceivedToken(token);
+        checkNotRevoked(token);
+        final String appSecId = config.getProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID);
+        if (!validationCache.isValidated(token, appSecId)) {
+            validateUncached(token, config, appSecId);
+        }
+    }
+
+    private static void validateUncached(EzSecurityToken token, Properties config, String appSecId)
+            throws TException {
+        final long start = System.nanoTime();
+        try (final SharedClients.Lease<EzbakeSecurityClient> lease = securityClients.acquire(config)) {
+            logger.debug("{}", config);
+            lease.getClient().validateReceivedToken(token);
             final String fromId = token.getValidity().getIssuedTo();
-            final String appSecId = config.getProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID);
             if (!fromId.equals(appSecId)) {
                 throw new TException("Mismatched Security Id's: " + fromId + " != " + appSecId);
             }
+            validationCache.validated(token, appSecId, System.nanoTime() - start);
         } catch (final Exception e) {
-            e.printStackTrace();
+            validationCache.failed(System.nanoTime() - start);
+            logger.warn("Security token validation failed", e);
             throw new TException(e);
-        } finally {
+        }
+    }
+
+    /**
+     * Validates many tokens like {@link #validateSecurityToken}, validating each distinct token once and distinct
+     * tokens in parallel on a shared, bounded pool of threads. Waits for every validation to finish.
+     *
+     * @param tokens the tokens to validate; equal tokens are only validated once
+     * @param config Properties
+     * @return the tokens that failed validation, by identity, each mapped to the reason it failed; empty if every
+     * token is valid
+     */
+    public static Map<EzSecurityToken, TException> validateAll(Collection<EzSecurityToken> tokens,
+            Properties config) {
+        // The future never fails; failures are reported in the map
+        return Futures.getUnchecked(validateAllAsync(tokens, config));
+    }
+
+    /**
+     * Starts validating many tokens like {@link #validateAll}, without waiting for the validations to finish. Tokens
+     * already in the validation cache are checked on the calling thread.
+     *
+     * @return a future that completes with the tokens that failed validation, by identity, each mapped to the reason
+     * it failed
+     */
+    public static ListenableFuture<Map<EzSecurityToken, TException>> validateAllAsync(
+            Collection<EzSecurityToken> tokens, final Properties config) {
+        final String appSecId = config.getProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID);
+        final Map<EzSecurityToken, TException> failures = new IdentityHashMap<>();
+        final Map<TokenKey, List<EzSecurityToken>> distinct = new LinkedHashMap<>();
+        for (final EzSecurityToken token : tokens) {
             try {
-                client.close();
-            } catch (final IOException e) {
-                // ignore
+                checkNotRevoked(token);
+            } catch (final TException e) {
+                failures.put(token, e);
+                continue;
+            }
+            if (validationCache.isValidated(token, appSecId)) {
+                continue;
             }
+            final TokenKey key = new TokenKey(token, appSecId);
+            List<EzSecurityToken> same = distinct.get(key);
+            if (same == null) {
+                same = new ArrayList<>(1);
+                distinct.put(key, same);
+            }
+            same.add(token);
+        }
+
+        final SettableFuture<Map<EzSecurityToken, TException>> result = SettableFuture.create();
+        if (distinct.isEmpty()) {
+            result.set(failures);
+            return result;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(distinct.size());
+        for (final List<EzSecurityToken> same : distinct.values()) {
+            final ListenableFuture<Void> validation = submitValidation(same.get(0), config, appSecId);
+            validation.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final TException failure = getFailure(validation);
+                    if (failure != null) {
+                        synchronized (failures) {
+                            for (final EzSecurityToken token : same) {
+                                failures.put(token, failure);
+                            }
+                        }
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        result.set(failures);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+        return result;
+    }
+
+    /**
+     * Validates a token like {@link #validateSecurityToken} on the shared validation threads.
+     *
+     * @return a future that completes when the token is found valid, or fails with the {@link TException} explaining
+     * why it is not
+     */
+    public static ListenableFuture<Void> validateAsync(EzSecurityToken token, Properties config) {
+        try {
+            checkNotRevoked(token);
+        } catch (final TException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        final String appSecId = config.getProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID);
+        if (validationCache.isValidated(token, appSecId)) {
+            return Futures.immediateFuture(null);
+        }
+        return submitValidation(token, config, appSecId);
+    }
+
+    private static ListenableFuture<Void> submitValidation(final EzSecurityToken token, final Properties config,
+            final String appSecId) {
+        return ValidationExecutor.INSTANCE.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws TException {
+                validateUncached(token, config, appSecId);
+                return null;
+            }
+        });
+    }
+
+    private static void checkNotRevoked(EzSecurityToken token) throws TException {
+        final TokenRevocationList revocations = revocationList;
+        if (revocations != null && revocations.isRevoked(token)) {
+            throw new TException("Security token has been revoked");
+        }
+    }
+
+    private static TException getFailure(Future<Void> validation) {
+        try {
+            Uninterruptibles.getUninterruptibly(validation);
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause() instanceof TException ? (TException) e.getCause() : new TException(e.getCause());
+        } catch (final CancellationException e) {
+            return new TException(e);
         }
     }
 
+    /**
+     * @return the security clients used by {@link #validateSecurityToken}, one per application security id; they are
+     * closed when the JVM shuts down, by a shutdown hook added when the first client is created, unless
+     * {@link SharedClients#removeShutdownHook()} is called
+     */
+    public static SecurityClientHolder getSecurityClients() {
+        return securityClients;
+    }
+
+    /**
+     * Replaces the security clients used by {@link #validateSecurityToken}, so tests can control how clients are
+     * created. The replaced holder is returned, not closed.
+     */
+    static SecurityClientHolder setSecurityClients(SecurityClientHolder clients) {
+        final SecurityClientHolder replaced = securityClients;
+        securityClients = clients;
+        return replaced;
+    }
+
+    /**
+     * Sets the revoked tokens that validation rejects. Validation does not check for revocation until a list is set.
+     *
+     * @param revocations the revoked tokens, or null to stop checking
+     */
+    public static void setRevocationList(TokenRevocationList revocations) {
+        revocationList = revocations;
+    }
+
+    /**
+     * @return the revoked tokens that validation rejects, or null if validation does not check for revocation
+     */
+    public static TokenRevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    /**
+     * @return the cache of tokens that passed {@link #validateSecurityToken}, for its statistics
+     */
+    public static TokenValidationCache getValidationCache() {
+        return validationCache;
+    }
+
     /**
      * Extracts UserDN from passed in token.
      *
@@ -75,13 +278,68 @@ public class TokenUtils {
     }
 
     /**
-     * Extracts authorizations from passed in token.
+     * Appends the UserDN of the passed in token, as returned by {@link #getUserDN}.
+     *
+     * @return the builder
+     */
+    public static StringBuilder appendUserDN(EzSecurityToken userToken, StringBuilder builder) {
+        return builder.append(getUserDN(userToken));
+    }
+
+    /**
+     * Appends the UserDN of the passed in token, as returned by {@link #getUserDN}.
+     *
+     * @return the appendable
+     */
+    public static <A extends Appendable> A appendUserDN(EzSecurityToken userToken, A appendable) throws IOException {
+        appendable.append(getUserDN(userToken));
+        return appendable;
+    }
+
+    /**
+     * Extracts authorizations from passed in token. The string for each distinct set of authorizations is built once
+     * and then shared with {@link ClassificationUtils}, so repeated calls do not allocate.
      *
      * @param userToken passed in token.
-     * @return comma-delimited string of authorizations.
+     * @return comma-delimited string of authorizations, in sorted order.
      */
     public static String getAuths(EzSecurityToken userToken) {
-        return userToken.isSetAuthorizations() ? StringUtils.join(
-                userToken.getAuthorizations().getFormalAuthorizations(), ",") : "N/A - No auths set";
+        if (!userToken.isSetAuthorizations()) {
+            return "N/A - No auths set";
+        }
+        final Set<String> formalAuths = userToken.getAuthorizations().getFormalAuthorizations();
+        if (formalAuths == null) {
+            return null;
+        }
+        return ClassificationUtils.getAuthorizationSets().intern(formalAuths).toString();
+    }
+
+    /**
+     * Appends the authorizations of the passed in token, as returned by {@link #getAuths}.
+     *
+     * @return the builder
+     */
+    public static StringBuilder appendAuths(EzSecurityToken userToken, StringBuilder builder) {
+        return builder.append(getAuths(userToken));
+    }
+
+    /**
+     * Appends the authorizations of the passed in token, as returned by {@link #getAuths}.
+     *
+     * @return the appendable
+     */
+    public static <A extends Appendable> A appendAuths(EzSecurityToken userToken, A appendable) throws IOException {
+        appendable.append(getAuths(userToken));
+        return appendable;
+    }
+
+    /**
+     * Threads for asynchronous validation, created on first use. Validation may wait on the security service, so
+     * there are a few more threads than processors.
+     */
+    private static final class ValidationExecutor {
+        static final ListeningExecutorService INSTANCE = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()),
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("token-validation-%d").build()));
     }
 }
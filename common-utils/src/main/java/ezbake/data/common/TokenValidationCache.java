@@ -0,0 +1,146 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * Remembers security tokens that have passed validation, so a token presented again before it expires is accepted
+ * with a lookup instead of another signature check. Entries are dropped at the token's {@code notAfter} time, and the
+ * least recently used entries are evicted once the cache is full.
+ *
+ * A cached token only matches a presented token that is equal to it in every field, not just in its signature, so
+ * altering any part of a validated token forces a full validation.
+ */
+public class TokenValidationCache {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private static final Ticker WALL_CLOCK = new Ticker() {
+        @Override
+        public long read() {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+    };
+
+    private final Cache<TokenKey, Long> validated;
+    private final Ticker clock;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong validations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong validationNanos = new AtomicLong();
+
+    public TokenValidationCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the number of validated tokens to remember
+     */
+    public TokenValidationCache(long maximumSize) {
+        this(maximumSize, WALL_CLOCK);
+    }
+
+    /**
+     * @param clock reads the wall clock time, in nanoseconds since the epoch
+     */
+    TokenValidationCache(long maximumSize, Ticker clock) {
+        this.validated = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.clock = clock;
+    }
+
+    /**
+     * @param securityId the security id of the application the token was validated for
+     * @return whether the token has been validated for the application and has not expired since
+     */
+    public boolean isValidated(EzSecurityToken token, String securityId) {
+        if (!isCacheable(token)) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        final TokenKey key = new TokenKey(token, securityId);
+        final Long notAfter = validated.getIfPresent(key);
+        if (notAfter == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        if (notAfter <= currentTimeMillis()) {
+            validated.invalidate(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return false;
+        }
+
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remembers that the token passed validation for the application until its {@code notAfter} time. A copy of the
+     * token is kept, so later changes to the given token do not affect the cache.
+     *
+     * @param validationNanos the time the validation took, for {@link #stats()}
+     */
+    public void validated(EzSecurityToken token, String securityId, long validationNanos) {
+        validations.incrementAndGet();
+        this.validationNanos.addAndGet(validationNanos);
+        if (isCacheable(token) && token.getValidity().getNotAfter() > currentTimeMillis()) {
+            validated.put(new TokenKey(token.deepCopy(), securityId), token.getValidity().getNotAfter());
+        }
+    }
+
+    /**
+     * Records that a token failed validation. Failures are not cached.
+     */
+    public void failed(long validationNanos) {
+        failures.incrementAndGet();
+        this.validationNanos.addAndGet(validationNanos);
+    }
+
+    /**
+     * @return lookups, validations and evictions so far. Expired tokens count as misses and evictions, and
+     * validations are reported as loads.
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.get(), misses.get(), validations.get(), failures.get(), validationNanos.get(),
+                validated.stats().evictionCount() + expirations.get());
+    }
+
+    public long size() {
+        return validated.size();
+    }
+
+    public void invalidateAll() {
+        validated.invalidateAll();
+    }
+
+    private long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(clock.read());
+    }
+
+    private static boolean isCacheable(EzSecurityToken token) {
+        return token.isSetValidity() && token.getValidity().getSignature() != null;
+    }
+}
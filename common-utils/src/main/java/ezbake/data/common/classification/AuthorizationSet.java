@@ -0,0 +1,130 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.accumulo.core.security.Authorizations;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * An immutable set of authorizations along with the forms it is used in: its sorted, comma-separated string, the
+ * UTF-8 bytes of each authorization and the Accumulo {@link Authorizations}. Each form is built once, so a set that is
+ * shared, normally through an {@link AuthorizationSetInterner}, is never converted twice.
+ */
+public final class AuthorizationSet implements Iterable<String> {
+    public static final AuthorizationSet EMPTY = new AuthorizationSet(ImmutableSortedSet.<String>of());
+
+    private final ImmutableSortedSet<String> auths;
+    private final String joined;
+    private final byte[][] bytes;
+    private final int hash;
+    private volatile Authorizations authorizations;
+
+    AuthorizationSet(ImmutableSortedSet<String> auths) {
+        this.auths = auths;
+        this.joined = Joiner.on(',').join(auths);
+        this.hash = auths.hashCode();
+
+        this.bytes = new byte[auths.size()][];
+        int i = 0;
+        for (final String auth : auths) {
+            bytes[i++] = auth.getBytes(StandardCharsets.UTF_8);
+        }
+        this.authorizations = auths.isEmpty() ? Authorizations.EMPTY : null;
+    }
+
+    /**
+     * @return the authorizations, in sorted order
+     */
+    public ImmutableSortedSet<String> getAuths() {
+        return auths;
+    }
+
+    /**
+     * @return the UTF-8 bytes of each authorization, in sorted order, as read-only views of the bytes held by the set
+     */
+    public List<ByteBuffer> getBytes() {
+        final ImmutableList.Builder<ByteBuffer> builder = ImmutableList.builder();
+        for (final byte[] auth : bytes) {
+            builder.add(ByteBuffer.wrap(auth).asReadOnlyBuffer());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the Accumulo form of the set, built on first use. Building it checks that every authorization is valid
+     * for Accumulo, so this throws where the other forms do not.
+     *
+     * @throws IllegalArgumentException if an authorization is empty or has characters Accumulo does not allow
+     */
+    public Authorizations getAuthorizations() {
+        Authorizations result = authorizations;
+        if (result == null) {
+            result = new Authorizations(Arrays.asList(bytes));
+            authorizations = result;
+        }
+        return result;
+    }
+
+    public boolean contains(String auth) {
+        return auths.contains(auth);
+    }
+
+    public int size() {
+        return auths.size();
+    }
+
+    public boolean isEmpty() {
+        return auths.isEmpty();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return auths.iterator();
+    }
+
+    /**
+     * @return the authorizations in sorted order, separated by commas
+     */
+    @Override
+    public String toString() {
+        return joined;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AuthorizationSet)) {
+            return false;
+        }
+        final AuthorizationSet other = (AuthorizationSet) obj;
+        return hash == other.hash && auths.equals(other.auths);
+    }
+}
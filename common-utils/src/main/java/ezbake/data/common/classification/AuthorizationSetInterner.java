@@ -0,0 +1,96 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.Set;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Maps each distinct set of authorizations to one shared {@link AuthorizationSet}. Lookups hash and compare the given
+ * set's contents, so the many tokens that carry equal sets all get the same instance, and its string, bytes and
+ * Accumulo form are only built the first time. The least recently used sets are dropped once the interner is full;
+ * a dropped set stays usable, but an equal set interned later gets a new instance.
+ *
+ * The interner is thread-safe.
+ */
+public class AuthorizationSetInterner {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private static final Splitter SPLITTER = Splitter.on(',').trimResults();
+
+    private final Cache<Set<String>, AuthorizationSet> sets;
+
+    public AuthorizationSetInterner() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the number of distinct sets to hold
+     */
+    public AuthorizationSetInterner(long maximumSize) {
+        this.sets = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @param auths the authorizations; the interner keeps its own copy, so the set may change afterwards
+     * @return the shared instance equal to the set, or {@link AuthorizationSet#EMPTY} if it is null or empty
+     */
+    public AuthorizationSet intern(Set<String> auths) {
+        if (auths == null || auths.isEmpty()) {
+            return AuthorizationSet.EMPTY;
+        }
+
+        final AuthorizationSet interned = sets.getIfPresent(auths);
+        if (interned != null) {
+            return interned;
+        }
+        final AuthorizationSet created = new AuthorizationSet(ImmutableSortedSet.copyOf(auths));
+        final AuthorizationSet raced = sets.asMap().putIfAbsent(created.getAuths(), created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * @param auths comma-separated authorizations, as returned by {@link AuthorizationSet#toString()}; whitespace
+     * around each authorization is ignored
+     * @return the shared instance for the authorizations, or {@link AuthorizationSet#EMPTY} if the string is null or
+     * blank
+     */
+    public AuthorizationSet intern(String auths) {
+        if (auths == null || auths.trim().isEmpty()) {
+            return AuthorizationSet.EMPTY;
+        }
+        return intern(ImmutableSortedSet.copyOf(SPLITTER.split(auths)));
+    }
+
+    /**
+     * @return lookups and evictions so far; sets built on a miss are not counted as loads
+     */
+    public CacheStats stats() {
+        return sets.stats();
+    }
+
+    public long size() {
+        return sets.size();
+    }
+
+    public void invalidateAll() {
+        sets.invalidateAll();
+    }
+}
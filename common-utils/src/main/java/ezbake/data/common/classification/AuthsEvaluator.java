@@ -0,0 +1,120 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.VisibilityEvaluator;
+import org.apache.accumulo.core.security.VisibilityParseException;
+
+import ezbake.classification.ClassificationConversionException;
+
+/**
+ * Checks classifications against one set of authorizations. Obtain one with
+ * {@link ClassificationUtils#evaluatorFor} and reuse it for every document in a request, instead of converting the
+ * user's authorizations for each check.
+ *
+ * Evaluators are immutable and safe to share between threads.
+ */
+public final class AuthsEvaluator {
+    private final AuthorizationSet auths;
+    private final VisibilityEvaluator evaluator;
+    private final long[] mask;
+
+    AuthsEvaluator(AuthorizationSet auths, VisibilityCompiler compiler) {
+        this.auths = auths;
+        this.evaluator = new VisibilityEvaluator(auths.getAuthorizations());
+        this.mask = compiler.encode(auths);
+    }
+
+    /**
+     * @return the authorizations this evaluator checks against
+     */
+    public AuthorizationSet getAuths() {
+        return auths;
+    }
+
+    /**
+     * @return whether the authorizations satisfy the parsed Accumulo classification
+     */
+    public boolean evaluate(ColumnVisibility visibility) throws VisibilityParseException {
+        return evaluator.evaluate(visibility);
+    }
+
+    /**
+     * @param visibility an expression compiled by {@link ClassificationUtils#getVisibilityCompiler()}
+     * @return whether the authorizations satisfy the compiled classification
+     */
+    public boolean evaluate(CompiledVisibility visibility) throws VisibilityParseException {
+        return visibility.evaluate(mask, evaluator);
+    }
+
+    /**
+     * @return whether the authorizations satisfy the Accumulo-style boolean expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public boolean confirmAccumuloClassification(String accumuloClassification) throws VisibilityParseException {
+        return evaluate(ClassificationUtils.getVisibilityCompiler().compile(accumuloClassification));
+    }
+
+    /**
+     * Checks a batch of Accumulo-style boolean expressions, such as the classifications of a page of results. Each
+     * distinct expression is evaluated once, and large batches are checked in parallel.
+     *
+     * @return the indexes of the expressions the authorizations satisfy
+     * @throws IllegalArgumentException if an expression is not valid
+     */
+    public BitSet filterAccumuloClassifications(List<String> accumuloClassifications)
+            throws VisibilityParseException {
+        final VisibilityCompiler compiler = ClassificationUtils.getVisibilityCompiler();
+        return new BatchFilter<String>(this, accumuloClassifications) {
+            @Override
+            CompiledVisibility compile(String classification) {
+                return compiler.compile(classification);
+            }
+        }.filter();
+    }
+
+    /**
+     * Checks a batch of compiled expressions like {@link #filterAccumuloClassifications}.
+     *
+     * @return the indexes of the expressions the authorizations satisfy
+     */
+    public BitSet filter(List<CompiledVisibility> visibilities) throws VisibilityParseException {
+        return new BatchFilter<CompiledVisibility>(this, visibilities) {
+            @Override
+            CompiledVisibility compile(CompiledVisibility visibility) {
+                return visibility;
+            }
+        }.filter();
+    }
+
+    /**
+     * @return whether the authorizations satisfy the CAPCO classification
+     * @throws ClassificationConversionException if the classification is not valid
+     */
+    public boolean confirmCAPCOClassification(String capcoClassification)
+            throws ClassificationConversionException, VisibilityParseException {
+        return confirmAccumuloClassification(
+                ClassificationUtils.getAccumuloVisibilityStringFromCAPCO(capcoClassification));
+    }
+
+    @Override
+    public String toString() {
+        return "AuthsEvaluator[" + auths + "]";
+    }
+}
@@ -0,0 +1,136 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.accumulo.core.security.VisibilityParseException;
+
+/**
+ * Checks a batch of classifications against one user's authorizations. Each distinct classification in the batch is
+ * evaluated once. Large batches are split into ranges that are checked in parallel on a shared fork/join pool; ranges
+ * start on 64-row boundaries, so each one writes its own words of the result.
+ *
+ * @param <T> the type of classification in the batch
+ */
+abstract class BatchFilter<T> {
+    /**
+     * Batches with at least this many rows are checked in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Rows checked by each parallel task; a multiple of 64.
+     */
+    private static final int RANGE_SIZE = 2048;
+
+    private final AuthsEvaluator evaluator;
+    private final List<? extends T> classifications;
+    private final ConcurrentMap<T, Boolean> decided = new ConcurrentHashMap<>();
+    private final long[] words;
+
+    BatchFilter(AuthsEvaluator evaluator, List<? extends T> classifications) {
+        this.evaluator = evaluator;
+        this.classifications = classifications;
+        this.words = new long[(classifications.size() + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * @return the classification compiled for evaluation
+     */
+    abstract CompiledVisibility compile(T classification);
+
+    /**
+     * @return the rows whose classifications the user satisfies
+     */
+    BitSet filter() throws VisibilityParseException {
+        if (classifications.size() < PARALLEL_THRESHOLD) {
+            filter(0, classifications.size());
+        } else {
+            try {
+                Pool.INSTANCE.invoke(new RangeTask(0, classifications.size()));
+            } catch (final EvaluationException e) {
+                throw e.parseException;
+            }
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private void filter(int from, int to) throws VisibilityParseException {
+        for (int row = from; row < to; row++) {
+            final T classification = classifications.get(row);
+            Boolean allowed = decided.get(classification);
+            if (allowed == null) {
+                allowed = evaluator.evaluate(compile(classification));
+                decided.put(classification, allowed);
+            }
+            if (allowed) {
+                words[row / Long.SIZE] |= 1L << row;
+            }
+        }
+    }
+
+    private final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RANGE_SIZE) {
+                try {
+                    filter(from, to);
+                } catch (final VisibilityParseException e) {
+                    throw new EvaluationException(e);
+                }
+            } else {
+                final int middle = (from + (to - from) / 2) & -Long.SIZE;
+                invokeAll(new RangeTask(from, middle), new RangeTask(middle, to));
+            }
+        }
+    }
+
+    /**
+     * Carries a parse failure out of a fork/join task.
+     */
+    private static final class EvaluationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final VisibilityParseException parseException;
+
+        EvaluationException(VisibilityParseException parseException) {
+            super(parseException);
+            this.parseException = parseException;
+        }
+    }
+
+    /**
+     * The pool for parallel batches, created on first use.
+     */
+    private static final class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+}
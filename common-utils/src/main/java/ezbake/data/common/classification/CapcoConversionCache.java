@@ -0,0 +1,140 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import ezbake.base.thrift.Visibility;
+import ezbake.classification.ClassificationConversionException;
+import ezbake.classification.impl.ClassificationToVisibility;
+
+/**
+ * Remembers the conversions of CAPCO classification strings to Accumulo boolean expressions and {@link Visibility}
+ * objects. Data is marked with comparatively few distinct classifications, so after the first document with a marking
+ * each conversion is a lookup. The least recently used markings are evicted once the cache is full.
+ *
+ * Invalid classifications are not cached; converting one throws every time. The cache is thread-safe, and concurrent
+ * requests for the same marking convert it once.
+ */
+public class CapcoConversionCache {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private static final Logger logger = LoggerFactory.getLogger(CapcoConversionCache.class);
+
+    private final Cache<String, String> expressions;
+    private final Cache<String, Visibility> visibilities;
+
+    public CapcoConversionCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the number of markings to remember, for each kind of conversion
+     */
+    public CapcoConversionCache(long maximumSize) {
+        this.expressions = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.visibilities = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @return the Accumulo boolean expression for the CAPCO classification string
+     * @throws ClassificationConversionException if the classification is not valid
+     */
+    public String getExpression(final String capcoClassification) throws ClassificationConversionException {
+        return get(expressions, capcoClassification, new Callable<String>() {
+            @Override
+            public String call() throws ClassificationConversionException {
+                return new ClassificationToVisibility().toVisibility(
+                        ClassificationUtils.createClassificationFromString(capcoClassification));
+            }
+        });
+    }
+
+    /**
+     * @return the Visibility for the CAPCO classification string. Each call returns a new copy, so callers may change
+     * it.
+     * @throws ClassificationConversionException if the classification is not valid
+     */
+    public Visibility getVisibility(final String capcoClassification) throws ClassificationConversionException {
+        return get(visibilities, capcoClassification, new Callable<Visibility>() {
+            @Override
+            public Visibility call() throws ClassificationConversionException {
+                return new ClassificationToVisibility().toVisibilityThrift(
+                        ClassificationUtils.createClassificationFromString(capcoClassification));
+            }
+        }).deepCopy();
+    }
+
+    /**
+     * Converts the classifications ahead of use, so the first documents with each marking do not pay for it.
+     * Classifications that are not valid are logged and skipped.
+     *
+     * @return the number of classifications converted
+     */
+    public int preload(Iterable<String> capcoClassifications) {
+        int loaded = 0;
+        for (final String capcoClassification : capcoClassifications) {
+            try {
+                getExpression(capcoClassification);
+                getVisibility(capcoClassification);
+                loaded++;
+            } catch (final ClassificationConversionException e) {
+                logger.warn("Skipping invalid classification " + capcoClassification, e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return lookups, conversions and evictions of boolean expressions so far
+     */
+    public CacheStats expressionStats() {
+        return expressions.stats();
+    }
+
+    /**
+     * @return lookups, conversions and evictions of Visibility objects so far
+     */
+    public CacheStats visibilityStats() {
+        return visibilities.stats();
+    }
+
+    public void invalidateAll() {
+        expressions.invalidateAll();
+        visibilities.invalidateAll();
+    }
+
+    private static <V> V get(Cache<String, V> cache, String capcoClassification, Callable<V> converter)
+            throws ClassificationConversionException {
+        try {
+            return cache.get(capcoClassification, converter);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), ClassificationConversionException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+}
@@ -14,22 +14,23 @@
 
 package ezbake.data.common.classification;
 
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import ezbake.base.thrift.Visibility;
 import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.security.Authorizations;
-import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.security.ColumnVisibility.Node;
-import org.apache.accumulo.core.security.VisibilityEvaluator;
 import org.apache.accumulo.core.security.VisibilityParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ezbake.classification.ClassificationConversionException;
-import ezbake.classification.impl.ClassificationToVisibility;
 
-import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import ezbake.base.thrift.EzSecurityToken;
 
@@ -40,6 +41,17 @@ public class ClassificationUtils {
     public static final String USER_FORMAL_AUTHS = "formalAuths";
     public static final String USER_EXTERNAL_COMMUNITY_AUTHS = "externalCommunityAuths";
 
+    private static final AuthorizationSetInterner authorizationSets = new AuthorizationSetInterner();
+
+    private static final CapcoConversionCache capcoConversions = new CapcoConversionCache();
+
+    private static final ColumnVisibilityCache columnVisibilities = new ColumnVisibilityCache();
+
+    private static final VisibilityCompiler visibilityCompiler = new VisibilityCompiler();
+
+    private static final Cache<AuthorizationSet, AuthsEvaluator> evaluators =
+            CacheBuilder.newBuilder().maximumSize(1000).build();
+
     /**
      * Check that the user has all authorizations for the given document CAPCO classification. Useful for determining
      * if a user can insert some data. This converts the CAPCO string to accumulo-style boolean expression to validate
@@ -67,6 +79,37 @@ public class ClassificationUtils {
         return confirmAuthsForClassification(security, accumuloClassification, authsType);
     }
 
+    /**
+     * Checks which of a batch of Accumulo document classification strings the user has valid authorizations to read,
+     * with the same result as calling {@link #confirmAuthsForAccumuloClassification} for each. Each distinct
+     * classification is evaluated once, and large batches are checked in parallel.
+     *
+     * @param security the user's token
+     * @param accumuloClassifications the classifications, for example one for each document in a result set
+     * @param authsType either Formal Visibility auths or External Community auths
+     * @return the indexes of the classifications the user can read
+     * @throws VisibilityParseException
+     */
+    public static BitSet confirmAuthsForAccumuloClassifications(EzSecurityToken security,
+            List<String> accumuloClassifications, String authsType) throws VisibilityParseException {
+        return evaluatorFor(security, authsType).filterAccumuloClassifications(accumuloClassifications);
+    }
+
+    /**
+     * Filters records lazily as they are read, passing on only those the user has valid authorizations to read. See
+     * {@link VisibilityFilteringIterator}.
+     *
+     * @param records the records to filter; they are read only as the returned iterator is
+     * @param security the user's token
+     * @param authsType either Formal Visibility auths or External Community auths
+     * @param extractor reads each record's Accumulo document classification string
+     * @return the records the user can read
+     */
+    public static <T> VisibilityFilteringIterator<T> filterReadable(Iterator<? extends T> records,
+            EzSecurityToken security, String authsType, VisibilityExtractor<? super T> extractor) {
+        return new VisibilityFilteringIterator<T>(records, evaluatorFor(security, authsType), extractor);
+    }
+
     /**
      * Check that the user has valid authorizations to read a document that's for the given Accumulo document
      * classification string.
@@ -84,69 +127,124 @@ public class ClassificationUtils {
     private static boolean confirmAuthsForClassification(EzSecurityToken security, String booleanExpressionString,
                                                          String authsType)
             throws VisibilityParseException {
-        final ColumnVisibility cv = new ColumnVisibility(booleanExpressionString);
-        String userAuthsString = null;
-        if (authsType == null || authsType.equals(USER_FORMAL_AUTHS)) {
-            userAuthsString = extractUserAuths(security);
-        } else if (authsType.equals(USER_EXTERNAL_COMMUNITY_AUTHS)) {
-            userAuthsString = extractUserExternalCommunityAuths(security);
-        }
-
-        log.debug("confirmAuthsForClassification: userAuthsString: " + userAuthsString);
+        final CompiledVisibility cv = visibilityCompiler.compile(booleanExpressionString);
+        final AuthsEvaluator evaluator = evaluatorFor(security, authsType);
 
-        final Authorizations userAuths = getAuthsFromString(userAuthsString);
-        final VisibilityEvaluator ct = new VisibilityEvaluator(userAuths);
+        log.debug("confirmAuthsForClassification: userAuthsString: {}", evaluator.getAuths());
 
-        final boolean authorized = ct.evaluate(cv);
+        final boolean authorized = evaluator.evaluate(cv);
 
-        log.debug("confirmAuthsForClassification: " + authorized);
+        log.debug("confirmAuthsForClassification: {}", authorized);
 
         return authorized;
     }
 
+    /**
+     * Gets an evaluator for the user's authorizations of the given type. Checking many documents for one user through
+     * the same evaluator converts the user's authorizations only once. Users with equal authorizations share an
+     * evaluator.
+     *
+     * @param security the user's token
+     * @param authsType either Formal Visibility auths or External Community auths; null means Formal Visibility auths
+     * @return the evaluator for the user's authorizations
+     * @throws IllegalArgumentException if an authorization has characters Accumulo does not allow
+     */
+    public static AuthsEvaluator evaluatorFor(EzSecurityToken security, String authsType) {
+        final AuthorizationSet auths = getUserAuthorizationSet(security, authsType);
+        AuthsEvaluator evaluator = evaluators.getIfPresent(auths);
+        if (evaluator == null) {
+            final AuthsEvaluator created = new AuthsEvaluator(auths, visibilityCompiler);
+            evaluator = evaluators.asMap().putIfAbsent(auths, created);
+            if (evaluator == null) {
+                evaluator = created;
+            }
+        }
+        return evaluator;
+    }
+
+    /**
+     * Converts a CAPCO classification string to an Accumulo boolean expression. Conversions are cached; see
+     * {@link #getCapcoConversions()}.
+     *
+     * @throws ClassificationConversionException if the capcoClassification is not valid
+     */
     public static String getAccumuloVisibilityStringFromCAPCO(String capcoClassification)
             throws ClassificationConversionException {
-        final ClassificationToVisibility c2v = new ClassificationToVisibility();
-        final String booleanExpressionString =
-                c2v.toVisibility(createClassificationFromString(capcoClassification));
+        final String booleanExpressionString = capcoConversions.getExpression(capcoClassification);
         log.debug("getAccumuloVisibilityStringFromCAPCO: converted to boolean expression: " + booleanExpressionString);
 
         return booleanExpressionString;
     }
 
     /**
-     * Takes a valid CAPCO classification string and converts it to a Visibility object
+     * Takes a valid CAPCO classification string and converts it to a Visibility object. Conversions are cached; see
+     * {@link #getCapcoConversions()}.
      * @param capcoClassification valid CAPCO classification string
-     * @return A Visibility object
+     * @return A new Visibility object
      * @throws ClassificationConversionException if the capcoClassification is not valid
      */
     public static Visibility getVisibilityFromCAPCO(String capcoClassification) throws ClassificationConversionException {
-        final ClassificationToVisibility c2v = new ClassificationToVisibility();
-        return c2v.toVisibilityThrift(createClassificationFromString(capcoClassification));
+        return capcoConversions.getVisibility(capcoClassification);
+    }
+
+    /**
+     * @return the compiler that turns Accumulo boolean expressions into bitmasks for {@link AuthsEvaluator}, for its
+     * statistics and to compile expressions ahead of evaluating them
+     */
+    public static VisibilityCompiler getVisibilityCompiler() {
+        return visibilityCompiler;
+    }
+
+    /**
+     * @return the cache of parsed Accumulo boolean expressions, for its statistics
+     */
+    public static ColumnVisibilityCache getColumnVisibilities() {
+        return columnVisibilities;
+    }
+
+    /**
+     * @return the cache of CAPCO conversions, for its statistics and for preloading known markings
+     */
+    public static CapcoConversionCache getCapcoConversions() {
+        return capcoConversions;
     }
 
     public static Authorizations getAuthsFromString(final String auths) {
-        Authorizations retVal;
-        if (auths == null || auths.trim().equals("")) {
-            retVal = Authorizations.EMPTY;
-        } else {
-            retVal = new Authorizations(auths.split(","));
-        }
-        return retVal;
+        return authorizationSets.intern(auths).getAuthorizations();
     }
 
     public static String extractUserAuths(EzSecurityToken security) {
-        final Set<String> l = security.getAuthorizations().getFormalAuthorizations();
-        return convertSetToCommaSeparatedString(l);
+        return getUserAuthorizationSet(security, USER_FORMAL_AUTHS).toString();
     }
 
     public static String extractUserExternalCommunityAuths(EzSecurityToken security) {
-        final Set<String> l = security.getAuthorizations().getExternalCommunityAuthorizations();
-        return convertSetToCommaSeparatedString(l);
+        return getUserAuthorizationSet(security, USER_EXTERNAL_COMMUNITY_AUTHS).toString();
+    }
+
+    /**
+     * Gets the user's authorizations of the given type as the shared instance for that set of authorizations.
+     *
+     * @param security the user's token
+     * @param authsType either Formal Visibility auths or External Community auths; null means Formal Visibility auths
+     * @return the shared authorization set, which is empty if the token has none of the type or the type is unknown
+     */
+    public static AuthorizationSet getUserAuthorizationSet(EzSecurityToken security, String authsType) {
+        final Set<String> auths;
+        if (authsType == null || authsType.equals(USER_FORMAL_AUTHS)) {
+            auths = security.getAuthorizations().getFormalAuthorizations();
+        } else if (authsType.equals(USER_EXTERNAL_COMMUNITY_AUTHS)) {
+            auths = security.getAuthorizations().getExternalCommunityAuthorizations();
+        } else {
+            auths = null;
+        }
+        return authorizationSets.intern(auths);
     }
 
-    private static String convertSetToCommaSeparatedString(Set<String> set) {
-        return set == null ? "" : Joiner.on(',').join(set);
+    /**
+     * @return the interner holding the authorization sets of tokens seen so far, for its statistics
+     */
+    public static AuthorizationSetInterner getAuthorizationSets() {
+        return authorizationSets;
     }
 
     /**
@@ -0,0 +1,134 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Parsed Accumulo visibility expressions, keyed by the expression's bytes, so an expression seen before is not parsed
+ * again. The cache is bounded by an estimate of the memory its entries use, and the least recently used expressions
+ * are evicted first. Expressions that do not parse are not cached.
+ *
+ * The returned {@link ColumnVisibility} objects are shared between callers and threads. Evaluating them and reading
+ * their parse trees is safe, but callers must not change the arrays or nodes they expose.
+ */
+public class ColumnVisibilityCache {
+    /**
+     * The default bound on the estimated memory used by cached expressions, in bytes.
+     */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 16L * 1024 * 1024;
+
+    /**
+     * Estimated bytes used by a parsed expression beyond its own bytes: the visibility, its key and the cache entry.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * Estimated bytes of parse tree per byte of expression. Each term or operator costs a node of a few dozen bytes.
+     */
+    private static final int TREE_BYTES_PER_EXPRESSION_BYTE = 8;
+
+    private final Cache<Expression, ColumnVisibility> visibilities;
+
+    public ColumnVisibilityCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * @param maximumWeight the bound on the estimated memory used by cached expressions, in bytes
+     */
+    public ColumnVisibilityCache(long maximumWeight) {
+        this.visibilities = CacheBuilder.newBuilder().maximumWeight(maximumWeight)
+                .weigher(new Weigher<Expression, ColumnVisibility>() {
+                    @Override
+                    public int weigh(Expression key, ColumnVisibility value) {
+                        return ENTRY_OVERHEAD + key.bytes.length * (1 + TREE_BYTES_PER_EXPRESSION_BYTE);
+                    }
+                }).recordStats().build();
+    }
+
+    /**
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public ColumnVisibility get(String expression) {
+        return get(expression.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * @param expression the expression's bytes; the cache keeps its own copy, so the array may change afterwards
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public ColumnVisibility get(byte[] expression) {
+        return get(expression, true);
+    }
+
+    private ColumnVisibility get(byte[] expression, boolean copy) {
+        final ColumnVisibility cached = visibilities.getIfPresent(new Expression(expression));
+        if (cached != null) {
+            return cached;
+        }
+
+        // Key on a copy of the caller's array, since ColumnVisibility keeps the array it parses
+        final byte[] bytes = copy ? expression.clone() : expression;
+        final ColumnVisibility parsed = new ColumnVisibility(bytes);
+        final ColumnVisibility raced = visibilities.asMap().putIfAbsent(new Expression(bytes), parsed);
+        return raced == null ? parsed : raced;
+    }
+
+    /**
+     * @return lookups and evictions so far; parses are not counted as loads
+     */
+    public CacheStats stats() {
+        return visibilities.stats();
+    }
+
+    public long size() {
+        return visibilities.size();
+    }
+
+    public void invalidateAll() {
+        visibilities.invalidateAll();
+    }
+
+    private static final class Expression {
+        final byte[] bytes;
+        final int hash;
+
+        Expression(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Expression && Arrays.equals(bytes, ((Expression) obj).bytes);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.VisibilityEvaluator;
+import org.apache.accumulo.core.security.VisibilityParseException;
+
+/**
+ * An Accumulo visibility expression compiled by a {@link VisibilityCompiler} into disjunctive normal form: a list of
+ * clauses, each a bitmask of the term IDs that must all be held. A user, encoded as a bitmask of the terms they hold,
+ * satisfies the expression if some clause has no bits the user lacks, which takes a few word operations per clause.
+ *
+ * Expressions that could not be compiled keep only their parse tree and are evaluated by Accumulo's
+ * {@link VisibilityEvaluator}.
+ */
+public final class CompiledVisibility {
+    private final ColumnVisibility visibility;
+    private final long[][] clauses;
+
+    CompiledVisibility(ColumnVisibility visibility, long[][] clauses) {
+        this.visibility = visibility;
+        this.clauses = clauses;
+    }
+
+    public ColumnVisibility getVisibility() {
+        return visibility;
+    }
+
+    /**
+     * @return whether the expression was compiled to bitmasks, rather than falling back to Accumulo's evaluator
+     */
+    public boolean isCompiled() {
+        return clauses != null;
+    }
+
+    /**
+     * @return the number of clauses in the compiled expression, or -1 if it was not compiled
+     */
+    public int getClauseCount() {
+        return clauses == null ? -1 : clauses.length;
+    }
+
+    /**
+     * @param auths the user's terms, encoded by the same compiler
+     * @param fallback evaluates the expression if it was not compiled
+     */
+    boolean evaluate(long[] auths, VisibilityEvaluator fallback) throws VisibilityParseException {
+        if (clauses == null) {
+            return fallback.evaluate(visibility);
+        }
+        for (final long[] clause : clauses) {
+            if (covers(auths, clause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean covers(long[] auths, long[] clause) {
+        for (int i = 0; i < clause.length; i++) {
+            final long held = i < auths.length ? auths[i] : 0L;
+            if ((clause[i] & ~held) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return visibility + (clauses == null ? " (not compiled)" : " (" + clauses.length + " clauses)");
+    }
+}
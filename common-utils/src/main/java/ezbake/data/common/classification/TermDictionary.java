@@ -0,0 +1,63 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns each authorization term a dense integer ID, its bit position in compiled masks. IDs are never reassigned,
+ * so masks built at different times agree. Once the dictionary holds its capacity, new terms get no ID.
+ */
+final class TermDictionary {
+    static final int NO_ID = -1;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final int capacity;
+    private int next;
+
+    TermDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the term's ID, assigning the next one if the term is new, or {@link #NO_ID} if the term is new and the
+     * dictionary is full
+     */
+    int idOf(String term) {
+        final Integer id = ids.get(term);
+        return id != null ? id : assign(term);
+    }
+
+    private synchronized int assign(String term) {
+        final Integer id = ids.get(term);
+        if (id != null) {
+            return id;
+        }
+        if (next >= capacity) {
+            return NO_ID;
+        }
+        ids.put(term, next);
+        return next++;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
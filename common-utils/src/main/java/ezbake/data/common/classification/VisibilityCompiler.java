@@ -0,0 +1,258 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.ColumnVisibility.Node;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Compiles Accumulo visibility expressions into {@link CompiledVisibility} bitmasks, and users' authorizations into
+ * matching bitmasks, so that checking a user against an expression needs no tree walk or string comparison. Every
+ * term is given a bit from a dictionary shared by everything this compiler encodes.
+ *
+ * An expression falls back to Accumulo's evaluator if one of its terms cannot be given a bit because the dictionary
+ * is full, or if its normal form has more clauses than the compiler allows. Compiled expressions are cached by
+ * expression string. The compiler is thread-safe.
+ */
+public class VisibilityCompiler {
+    /**
+     * The default number of distinct terms given bits, which is also the widest mask.
+     */
+    public static final int DEFAULT_MAXIMUM_TERMS = 4096;
+
+    /**
+     * The default number of clauses an expression's normal form may have before it falls back.
+     */
+    public static final int DEFAULT_MAXIMUM_CLAUSES = 64;
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private static final long[] NONE = new long[0];
+
+    private final TermDictionary terms;
+    private final int maximumClauses;
+    private final Cache<String, CompiledVisibility> compiled;
+
+    public VisibilityCompiler() {
+        this(DEFAULT_MAXIMUM_TERMS, DEFAULT_MAXIMUM_CLAUSES, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumTerms the number of distinct terms given bits
+     * @param maximumClauses the number of clauses an expression's normal form may have before it falls back
+     * @param maximumSize the number of compiled expressions to cache
+     */
+    public VisibilityCompiler(int maximumTerms, int maximumClauses, long maximumSize) {
+        this.terms = new TermDictionary(maximumTerms);
+        this.maximumClauses = maximumClauses;
+        this.compiled = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @return the compiled expression, from the cache if it was compiled before
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public CompiledVisibility compile(String expression) {
+        CompiledVisibility result = compiled.getIfPresent(expression);
+        if (result == null) {
+            result = compile(ClassificationUtils.getColumnVisibilities().get(expression));
+            compiled.put(expression, result);
+        }
+        return result;
+    }
+
+    /**
+     * Compiles a parsed expression. The result is not cached.
+     */
+    public CompiledVisibility compile(ColumnVisibility visibility) {
+        final List<long[]> clauses = toClauses(visibility.getExpression(), visibility.getParseTree());
+        if (clauses == null) {
+            return new CompiledVisibility(visibility, null);
+        }
+        final long[][] trimmed = new long[clauses.size()][];
+        for (int i = 0; i < trimmed.length; i++) {
+            trimmed[i] = trim(clauses.get(i));
+        }
+        return new CompiledVisibility(visibility, trimmed);
+    }
+
+    /**
+     * Encodes a user's authorizations as a mask of the terms they hold. Authorizations that cannot be given a bit
+     * are left out; no compiled expression can contain them.
+     */
+    public long[] encode(AuthorizationSet auths) {
+        long[] mask = NONE;
+        for (final String auth : auths) {
+            final int id = terms.idOf(auth);
+            if (id != TermDictionary.NO_ID) {
+                if (id / Long.SIZE >= mask.length) {
+                    mask = Arrays.copyOf(mask, id / Long.SIZE + 1);
+                }
+                mask[id / Long.SIZE] |= 1L << id;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return lookups and evictions of compiled expressions so far; compilations are not counted as loads
+     */
+    public CacheStats stats() {
+        return compiled.stats();
+    }
+
+    public long size() {
+        return compiled.size();
+    }
+
+    /**
+     * @return the number of terms given bits so far
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * @return the clauses of the node's disjunctive normal form, each as a full-width mask, or null if the node cannot
+     * be compiled
+     */
+    private List<long[]> toClauses(byte[] expression, Node node) {
+        switch (node.getType()) {
+            case EMPTY:
+                return Collections.singletonList(newMask());
+            case TERM:
+                final int id = terms.idOf(getTerm(expression, node));
+                if (id == TermDictionary.NO_ID) {
+                    return null;
+                }
+                final long[] mask = newMask();
+                mask[id / Long.SIZE] |= 1L << id;
+                return Collections.singletonList(mask);
+            case AND:
+                List<long[]> product = Collections.singletonList(newMask());
+                for (final Node child : node.getChildren()) {
+                    final List<long[]> childClauses = toClauses(expression, child);
+                    // Give up before building a product far too large to reduce below the limit
+                    if (childClauses == null || product.size() * childClauses.size() > maximumClauses * 4) {
+                        return null;
+                    }
+                    final List<long[]> next = new ArrayList<>(product.size() * childClauses.size());
+                    for (final long[] left : product) {
+                        for (final long[] right : childClauses) {
+                            next.add(or(left, right));
+                        }
+                    }
+                    product = removeSubsumed(next);
+                    if (product.size() > maximumClauses) {
+                        return null;
+                    }
+                }
+                return product;
+            case OR:
+                final List<long[]> union = new ArrayList<>();
+                for (final Node child : node.getChildren()) {
+                    final List<long[]> childClauses = toClauses(expression, child);
+                    if (childClauses == null) {
+                        return null;
+                    }
+                    union.addAll(childClauses);
+                }
+                final List<long[]> reduced = removeSubsumed(union);
+                return reduced.size() > maximumClauses ? null : reduced;
+            // $CASES-OMITTED$
+            default:
+                return null;
+        }
+    }
+
+    private long[] newMask() {
+        return new long[(terms.capacity() + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * Drops duplicate clauses and clauses that hold every term of another clause, which can never be the only clause
+     * satisfied.
+     */
+    private static List<long[]> removeSubsumed(List<long[]> clauses) {
+        final List<long[]> kept = new ArrayList<>(clauses.size());
+        for (int i = 0; i < clauses.size(); i++) {
+            boolean subsumed = false;
+            for (int j = 0; j < clauses.size() && !subsumed; j++) {
+                // Of two equal clauses, keep the first
+                subsumed = i != j && isSubset(clauses.get(j), clauses.get(i))
+                        && (j < i || !Arrays.equals(clauses.get(i), clauses.get(j)));
+            }
+            if (!subsumed) {
+                kept.add(clauses.get(i));
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isSubset(long[] subset, long[] superset) {
+        for (int i = 0; i < subset.length; i++) {
+            if ((subset[i] & ~superset[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] or(long[] left, long[] right) {
+        final long[] result = new long[left.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = left[i] | right[i];
+        }
+        return result;
+    }
+
+    private static long[] trim(long[] mask) {
+        int length = mask.length;
+        while (length > 0 && mask[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(mask, length);
+    }
+
+    /**
+     * @return the term at the node, with the quotes and escapes of a quoted term removed
+     */
+    private static String getTerm(byte[] expression, Node node) {
+        final int start = node.getTermStart();
+        final int end = node.getTermEnd();
+        if (expression[start] != '"') {
+            return new String(expression, start, end - start, StandardCharsets.UTF_8);
+        }
+        final ByteArrayOutputStream unescaped = new ByteArrayOutputStream(end - start);
+        for (int i = start + 1; i < end - 1; i++) {
+            if (expression[i] == '\\') {
+                i++;
+            }
+            unescaped.write(expression[i]);
+        }
+        return new String(unescaped.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import org.apache.accumulo.core.security.VisibilityParseException;
+
+/**
+ * Thrown when a visibility expression is too large to expand into a list of conjunctions within the given limits.
+ * The expression itself is valid; callers that can use it unexpanded, or one conjunction at a time through
+ * {@link VisibilityUtils#enumerateVisibilities}, still may.
+ */
+public class VisibilityExpansionException extends VisibilityParseException {
+    private static final long serialVersionUID = 1L;
+
+    private final long count;
+    private final long limit;
+
+    public VisibilityExpansionException(String reason, byte[] expression, long count, long limit) {
+        super(reason + " (" + count + " > " + limit + ")", expression, 0);
+        this.count = count;
+        this.limit = limit;
+    }
+
+    /**
+     * @return the size that exceeded the limit, or Long.MAX_VALUE if it is larger still
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,169 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.accumulo.core.security.VisibilityParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * Passes on only the records a user may read, checking each one as it is pulled from the source. Nothing is read
+ * ahead beyond the next record, so results reach the caller as soon as the source produces them and memory use does
+ * not grow with the number of records.
+ *
+ * For bulk work, {@link #trySplit()} hands a batch of records from the front of the source to a new iterator that can
+ * be filtered on another thread, much like a Java 8 spliterator over a source of unknown size. Splits always take the
+ * records that come before this iterator's remaining ones, even after {@link #hasNext()} has looked ahead; the record
+ * it found is handed to the split first. As with a spliterator, an iterator and its splits must not be used from
+ * several threads at once: split on one thread, then give each split to its own thread.
+ *
+ * Records with no classification, or one that cannot be evaluated, are dropped. Invalid classifications are only logged
+ * at debug level, since a source can hold many of them; {@link #getInvalidCount()} counts the records dropped for one.
+ *
+ * @param <T> the type of record
+ */
+public class VisibilityFilteringIterator<T> extends UnmodifiableIterator<T> {
+    /**
+     * The default number of records handed to each split.
+     */
+    public static final int DEFAULT_SPLIT_SIZE = 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(VisibilityFilteringIterator.class);
+
+    private final Iterator<? extends T> source;
+    private final AuthsEvaluator evaluator;
+    private final VisibilityExtractor<? super T> extractor;
+    private final int splitSize;
+    private T next;
+    private boolean buffered;
+    private String lastClassification;
+    private boolean lastVisible;
+    private boolean lastInvalid;
+    private long dropped;
+    private long invalid;
+
+    public VisibilityFilteringIterator(Iterator<? extends T> source, AuthsEvaluator evaluator,
+            VisibilityExtractor<? super T> extractor) {
+        this(source, evaluator, extractor, DEFAULT_SPLIT_SIZE);
+    }
+
+    /**
+     * @param splitSize the number of records handed to each split
+     */
+    public VisibilityFilteringIterator(Iterator<? extends T> source, AuthsEvaluator evaluator,
+            VisibilityExtractor<? super T> extractor, int splitSize) {
+        this.source = source;
+        this.evaluator = evaluator;
+        this.extractor = extractor;
+        this.splitSize = splitSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!buffered && source.hasNext()) {
+            final T record = source.next();
+            if (isVisible(record)) {
+                next = record;
+                buffered = true;
+            } else {
+                dropped++;
+            }
+        }
+        return buffered;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T record = next;
+        next = null;
+        buffered = false;
+        return record;
+    }
+
+    /**
+     * Takes the next batch of records from the source, without checking them, and returns an iterator that filters
+     * them. A record already found by {@link #hasNext()} is the first of the batch. This iterator then continues after
+     * the batch.
+     *
+     * @return an iterator over the next batch of records, or null if the source has no more records
+     */
+    public VisibilityFilteringIterator<T> trySplit() {
+        final List<T> batch = new ArrayList<>(splitSize);
+        if (buffered) {
+            batch.add(next);
+            next = null;
+            buffered = false;
+        }
+        while (batch.size() < splitSize && source.hasNext()) {
+            batch.add(source.next());
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+        return new VisibilityFilteringIterator<>(batch.iterator(), evaluator, extractor, splitSize);
+    }
+
+    /**
+     * @return the number of records dropped so far by this iterator, not counting its splits
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of records dropped so far by this iterator, not counting its splits, because their
+     * classification could not be evaluated; these are included in {@link #getDroppedCount()}
+     */
+    public long getInvalidCount() {
+        return invalid;
+    }
+
+    private boolean isVisible(T record) {
+        final String classification = extractor.getClassification(record);
+        if (classification == null) {
+            return false;
+        }
+        // Records usually come in runs with the same classification
+        if (!classification.equals(lastClassification)) {
+            evaluate(classification);
+            lastClassification = classification;
+        }
+        if (lastInvalid) {
+            invalid++;
+        }
+        return lastVisible;
+    }
+
+    private void evaluate(String classification) {
+        try {
+            lastVisible = evaluator.confirmAccumuloClassification(classification);
+            lastInvalid = false;
+        } catch (final VisibilityParseException | IllegalArgumentException e) {
+            logger.debug("Dropping records with invalid classification " + classification, e);
+            lastVisible = false;
+            lastInvalid = true;
+        }
+    }
+}
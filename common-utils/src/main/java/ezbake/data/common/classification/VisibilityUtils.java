@@ -21,23 +21,55 @@ import org.apache.accumulo.core.security.VisibilityParseException;
 import org.apache.commons.lang.StringUtils;
 import ezbake.classification.ClassificationConversionException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-@SuppressWarnings({"rawtypes", "unchecked"})
 public class VisibilityUtils {
+    /**
+     * The default limit on the number of terms in an expression that is expanded, counting repeats.
+     */
+    public static final int DEFAULT_MAXIMUM_TERMS = 512;
+
+    /**
+     * The default limit on the number of conjunctions an expression may expand to, before repeated and subsumed
+     * conjunctions are left out.
+     */
+    public static final long DEFAULT_MAXIMUM_CONJUNCTIONS = 4096;
+
+    private static final Cache<String, Expansion> capcoVisibilityLists =
+            CacheBuilder.newBuilder().maximumSize(10000).recordStats().build();
+
+    private static final Cache<String, Expansion> expressionVisibilityLists =
+            CacheBuilder.newBuilder().maximumSize(10000).recordStats().build();
 
     /**
      * Given a DocumentClassification object that has a CAPCO string representing the classification return a list of
-     * string arrays which represent the permutations of the visibilities
+     * string lists which represent the permutations of the visibilities
      *
      * @param documentClassification
-     * @return list of string arrays
+     * @return immutable list of string lists
      *
      * @throws ClassificationConversionException
      * @throws VisibilityParseException
      */
-    public static List generateVisibilityList(DocumentClassification documentClassification)
+    public static List<List<String>> generateVisibilityList(DocumentClassification documentClassification)
             throws ClassificationConversionException, VisibilityParseException {
 
         return generateVisibilityList(documentClassification.getClassification(), true);
@@ -45,96 +77,396 @@ public class VisibilityUtils {
 
     /**
      * Given a CAPCO string or an accumulo-style boolean expression string,
-     * return a list of string arrays which represent the permutations of the visibilities
+     * return a list of string lists which represent the permutations of the visibilities
      *
      * Example: 'S//REL TO USA,GBR,AUS' becomes this boolean expression 'S&(USA|GBR|AUS)' which results in this List [
      * [S,USA],[S,GBR],[S,AUS] ]
      *
+     * The lists are the expression's disjunctive normal form: each inner list holds terms that must all be present,
+     * and at least one inner list must be satisfied. Repeated terms, repeated lists and lists that hold all the terms
+     * of another list are left out. Results are cached by classification string and shared, so they cannot be changed.
+     *
+     * Expressions with more than {@link #DEFAULT_MAXIMUM_TERMS} terms, or that expand to more than
+     * {@link #DEFAULT_MAXIMUM_CONJUNCTIONS} conjunctions, are rejected.
+     *
      * @param classification
      * @param isCAPCO true if the 'classificaton' string is a CAPCO, false if it is an accumulo-style boolean expression string.
-     * @return
+     * @return immutable list of string lists
      * @throws ClassificationConversionException
+     * @throws VisibilityExpansionException if the expression is too large to expand
      * @throws VisibilityParseException
      */
-    public static List generateVisibilityList(String classification, boolean isCAPCO) throws ClassificationConversionException,
-            VisibilityParseException {
-        List classificationList = new ArrayList();
-
-        if (!StringUtils.isEmpty(classification)) {
-            String booleanExpression = classification;
-            if (isCAPCO) {
-                booleanExpression = ClassificationUtils.getAccumuloVisibilityStringFromCAPCO(classification);
-            }
-            final ColumnVisibility visibility = new ColumnVisibility(booleanExpression);
+    public static List<List<String>> generateVisibilityList(String classification, boolean isCAPCO)
+            throws ClassificationConversionException, VisibilityParseException {
+        return generateVisibilityList(classification, isCAPCO, DEFAULT_MAXIMUM_TERMS, DEFAULT_MAXIMUM_CONJUNCTIONS);
+    }
 
-            evaluateAccumuloExpression(visibility.getExpression(), visibility.getParseTree(), classificationList);
+    /**
+     * As {@link #generateVisibilityList(String, boolean)}, with limits on the size of the expression. Sizes are
+     * counted on the parsed expression before anything is expanded, so an expression over a limit fails fast without
+     * using memory in proportion to its expansion.
+     *
+     * @param maximumTerms the most terms the expression may hold, counting repeats
+     * @param maximumConjunctions the most conjunctions the expression may expand to, before repeated and subsumed
+     * conjunctions are left out
+     * @return immutable list of string lists
+     * @throws ClassificationConversionException
+     * @throws VisibilityExpansionException if the expression is over either limit
+     * @throws VisibilityParseException
+     */
+    public static List<List<String>> generateVisibilityList(String classification, boolean isCAPCO, int maximumTerms,
+            long maximumConjunctions) throws ClassificationConversionException, VisibilityParseException {
+        if (StringUtils.isEmpty(classification)) {
+            return Collections.emptyList();
+        }
 
-            // Some CAPCO strings (e.g. U) will not generate a list at all
-            // so we need to check such that they are all wrapped in sublists
-            if (classificationList.size() == 1 && classificationList.get(0) instanceof String) {
-                final ArrayList check = new ArrayList();
-                check.add(classificationList);
+        final Cache<String, Expansion> cache = isCAPCO ? capcoVisibilityLists : expressionVisibilityLists;
+        Expansion expansion = cache.getIfPresent(classification);
+        if (expansion == null) {
+            final ColumnVisibility visibility = parse(classification, isCAPCO);
+            final Node root = visibility.getParseTree();
+            expansion = new Expansion(visibility.getExpression(), countTerms(root), countConjunctions(root));
+            cache.put(classification, expansion);
+        }
 
-                classificationList = check;
-            }
+        // Limits are checked on every call, as callers may pass different ones for the same classification
+        if (expansion.terms > maximumTerms) {
+            throw new VisibilityExpansionException("Too many terms to expand", expansion.expression,
+                    expansion.terms, maximumTerms);
+        }
+        if (expansion.conjunctions > maximumConjunctions) {
+            throw new VisibilityExpansionException("Too many conjunctions to expand", expansion.expression,
+                    expansion.conjunctions, maximumConjunctions);
         }
 
+        List<List<String>> classificationList = expansion.list;
+        if (classificationList == null) {
+            final ColumnVisibility visibility = ClassificationUtils.getColumnVisibilities().get(expansion.expression);
+            classificationList = toImmutable(removeSubsumed(
+                    evaluateAccumuloExpression(expansion.expression, visibility.getParseTree())));
+            expansion.list = classificationList;
+        }
         return classificationList;
     }
 
+    /**
+     * Yields the conjunctions of a CAPCO string or an accumulo-style boolean expression string one at a time, in the
+     * order {@link #generateVisibilityList(String, boolean)} would list them, without building the whole expansion.
+     * Memory use is bounded by the size of the expression rather than the number of conjunctions, so this suits
+     * expressions too large to expand at once. Repeated terms within a conjunction are left out, but conjunctions are
+     * not compared with each other, so repeated and subsumed conjunctions are all yielded.
+     *
+     * @param classification
+     * @param isCAPCO true if the 'classificaton' string is a CAPCO, false if it is an accumulo-style boolean expression string.
+     * @return iterator of immutable string lists
+     * @throws ClassificationConversionException
+     * @throws VisibilityParseException
+     */
+    public static Iterator<List<String>> enumerateVisibilities(String classification, boolean isCAPCO)
+            throws ClassificationConversionException, VisibilityParseException {
+        if (StringUtils.isEmpty(classification)) {
+            return Collections.emptyIterator();
+        }
+
+        final ColumnVisibility visibility = parse(classification, isCAPCO);
+        final Iterable<Set<String>> conjunctions =
+                enumerateAccumuloExpression(visibility.getExpression(), visibility.getParseTree());
+        return Iterators.transform(conjunctions.iterator(), new Function<Set<String>, List<String>>() {
+            @Override
+            public List<String> apply(Set<String> conjunction) {
+                return ImmutableList.copyOf(conjunction);
+            }
+        });
+    }
+
+    /**
+     * @return lookups and evictions of cached visibility lists so far, for CAPCO strings or for accumulo-style
+     * boolean expressions
+     */
+    public static CacheStats getVisibilityListStats(boolean isCAPCO) {
+        return (isCAPCO ? capcoVisibilityLists : expressionVisibilityLists).stats();
+    }
+
+    private static ColumnVisibility parse(String classification, boolean isCAPCO)
+            throws ClassificationConversionException {
+        String booleanExpression = classification;
+        if (isCAPCO) {
+            booleanExpression = ClassificationUtils.getAccumuloVisibilityStringFromCAPCO(classification);
+        }
+        return ClassificationUtils.getColumnVisibilities().get(booleanExpression);
+    }
+
+    private static int countTerms(Node node) {
+        if (node.getType() == ColumnVisibility.NodeType.TERM) {
+            return 1;
+        }
+        int terms = 0;
+        for (final Node child : node.getChildren()) {
+            terms += countTerms(child);
+        }
+        return terms;
+    }
+
+    /**
+     * @return the number of conjunctions the node expands to before any are left out, or Long.MAX_VALUE if there are
+     * more than that
+     */
+    private static long countConjunctions(Node node) {
+        switch (node.getType()) {
+            case TERM:
+                return 1;
+            case AND:
+                long product = 1;
+                for (final Node child : node.getChildren()) {
+                    final long count = countConjunctions(child);
+                    product = count != 0 && product > Long.MAX_VALUE / count ? Long.MAX_VALUE : product * count;
+                }
+                return product;
+            case OR:
+                long sum = 0;
+                for (final Node child : node.getChildren()) {
+                    final long count = countConjunctions(child);
+                    sum = sum > Long.MAX_VALUE - count ? Long.MAX_VALUE : sum + count;
+                }
+                return sum;
+            // $CASES-OMITTED$
+            default:
+                return 0;
+        }
+    }
+
     /**
      * Based on Accumulo's VisibilityEvaluator.java's "evaluate" method; From the Accumulo-style boolean expression
-     * string, generates the security tagging field format for Mongo's $redact operator. The final returned list
-     * should be inserted into another list to make the double array format.
+     * string, generates the security tagging field format for Mongo's $redact operator: the conjunctions of terms
+     * whose disjunction is the expression, with terms in the order they appear. Each conjunction is built once, by
+     * appending to the conjunctions of the node's children, so the work is proportional to the size of the result.
      */
-    private static void evaluateAccumuloExpression(final byte[] expression, final Node root, List list)
+    private static List<Set<String>> evaluateAccumuloExpression(final byte[] expression, final Node root)
             throws VisibilityParseException {
 
         switch (root.getType()) {
+            case EMPTY:
+                return Collections.emptyList();
             case TERM:
-                final String term = ClassificationUtils.getAccumuloNodeTermString(expression, root);
-                list.add(term);
-                break;
+                final Set<String> term = new LinkedHashSet<>(1);
+                term.add(ClassificationUtils.getAccumuloNodeTermString(expression, root));
+                return Collections.singletonList(term);
             case AND:
                 if (root.getChildren() == null || root.getChildren().size() < 2) {
                     throw new VisibilityParseException("AND has less than 2 children", expression,
                             root.getTermStart());
                 }
-                final List andList = new ArrayList();
-
+                List<Set<String>> product = null;
                 for (final Node child : root.getChildren()) {
-                    evaluateAccumuloExpression(expression, child, andList);
-                }
-
-                // TODO: i shouldn't have to do this; should just be an add
-                if (andList.get(0) instanceof List) {
-                    list.addAll(andList);
-                } else {
-                    list.add(andList);
+                    final List<Set<String>> childList = evaluateAccumuloExpression(expression, child);
+                    if (product == null) {
+                        product = childList;
+                        continue;
+                    }
+                    final List<Set<String>> next = new ArrayList<>(product.size() * childList.size());
+                    for (final Set<String> left : product) {
+                        for (final Set<String> right : childList) {
+                            final Set<String> conjunction = new LinkedHashSet<>(left);
+                            conjunction.addAll(right);
+                            next.add(conjunction);
+                        }
+                    }
+                    product = next;
                 }
-
-                break;
+                return product;
             case OR:
                 if (root.getChildren() == null || root.getChildren().size() < 2) {
                     throw new VisibilityParseException("OR has less than 2 children", expression, root.getTermStart());
                 }
-                final List saved = new ArrayList();
-                saved.addAll(list);
-                list.clear();
-
+                final List<Set<String>> union = new ArrayList<>();
                 for (final Node child : root.getChildren()) {
-                    final List orList = new ArrayList();
-                    orList.addAll(saved);
+                    union.addAll(evaluateAccumuloExpression(expression, child));
+                }
+                return union;
+            // $CASES-OMITTED$
+            default:
+                throw new VisibilityParseException("No such node type", expression, root.getTermStart());
+        }
+    }
 
-                    evaluateAccumuloExpression(expression, child, orList);
+    /**
+     * Drops conjunctions that repeat another, or that hold every term of another and so add nothing to the
+     * disjunction. Conjunctions keep their order.
+     *
+     * Rather than comparing every pair, each conjunction kept is filed under its rarest term. A conjunction it
+     * subsumes must hold that term too, so a conjunction is only compared with those filed under its own terms. When
+     * terms are spread across the conjunctions, as in the products that large expansions come from, each comparison
+     * list stays short.
+     */
+    private static List<Set<String>> removeSubsumed(List<Set<String>> conjunctions) {
+        if (conjunctions.size() < 2) {
+            return conjunctions;
+        }
 
-                    list.add(orList);
+        // Only a conjunction with no more terms can subsume another, so keep the smallest first; the sort is stable,
+        // so of repeated conjunctions the first is kept
+        final List<Set<String>> bySize = new ArrayList<>(conjunctions);
+        Collections.sort(bySize, new Comparator<Set<String>>() {
+            @Override
+            public int compare(Set<String> left, Set<String> right) {
+                return Integer.compare(left.size(), right.size());
+            }
+        });
+        if (bySize.get(0).isEmpty()) {
+            // Always satisfied, so nothing else is needed
+            return Collections.singletonList(bySize.get(0));
+        }
+
+        final Map<String, Integer> termCounts = new HashMap<>();
+        for (final Set<String> conjunction : conjunctions) {
+            for (final String term : conjunction) {
+                final Integer count = termCounts.get(term);
+                termCounts.put(term, count == null ? 1 : count + 1);
+            }
+        }
+
+        final Map<String, List<Set<String>>> keptByTerm = new HashMap<>();
+        final Set<Set<String>> kept = Collections.newSetFromMap(new IdentityHashMap<Set<String>, Boolean>());
+        for (final Set<String> conjunction : bySize) {
+            if (isSubsumed(conjunction, keptByTerm)) {
+                continue;
+            }
+            kept.add(conjunction);
+            String rarest = null;
+            for (final String term : conjunction) {
+                if (rarest == null || termCounts.get(term) < termCounts.get(rarest)) {
+                    rarest = term;
                 }
+            }
+            List<Set<String>> filed = keptByTerm.get(rarest);
+            if (filed == null) {
+                filed = new ArrayList<>();
+                keptByTerm.put(rarest, filed);
+            }
+            filed.add(conjunction);
+        }
+
+        final List<Set<String>> minimal = new ArrayList<>(kept.size());
+        for (final Set<String> conjunction : conjunctions) {
+            if (kept.contains(conjunction)) {
+                minimal.add(conjunction);
+            }
+        }
+        return minimal;
+    }
+
+    private static boolean isSubsumed(Set<String> conjunction, Map<String, List<Set<String>>> keptByTerm) {
+        for (final String term : conjunction) {
+            final List<Set<String>> filed = keptByTerm.get(term);
+            if (filed == null) {
+                continue;
+            }
+            for (final Set<String> smaller : filed) {
+                if (conjunction.containsAll(smaller)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the conjunctions of the node as an iterable that produces them on demand. The expression is checked as
+     * the iterable is built, so a malformed expression fails here rather than part way through enumeration.
+     */
+    private static Iterable<Set<String>> enumerateAccumuloExpression(final byte[] expression, final Node root)
+            throws VisibilityParseException {
 
-                break;
+        switch (root.getType()) {
+            case EMPTY:
+                return Collections.emptyList();
+            case TERM:
+                return Collections.<Set<String>>singletonList(
+                        Collections.singleton(ClassificationUtils.getAccumuloNodeTermString(expression, root)));
+            case AND:
+                if (root.getChildren() == null || root.getChildren().size() < 2) {
+                    throw new VisibilityParseException("AND has less than 2 children", expression,
+                            root.getTermStart());
+                }
+                Iterable<Set<String>> product = null;
+                for (final Node child : root.getChildren()) {
+                    final Iterable<Set<String>> childConjunctions = enumerateAccumuloExpression(expression, child);
+                    product = product == null ? childConjunctions : new Product(product, childConjunctions);
+                }
+                return product;
+            case OR:
+                if (root.getChildren() == null || root.getChildren().size() < 2) {
+                    throw new VisibilityParseException("OR has less than 2 children", expression, root.getTermStart());
+                }
+                final List<Iterable<Set<String>>> union = new ArrayList<>(root.getChildren().size());
+                for (final Node child : root.getChildren()) {
+                    union.add(enumerateAccumuloExpression(expression, child));
+                }
+                return Iterables.concat(union);
             // $CASES-OMITTED$
             default:
                 throw new VisibilityParseException("No such node type", expression, root.getTermStart());
         }
     }
+
+    private static List<List<String>> toImmutable(List<Set<String>> conjunctions) {
+        final ImmutableList.Builder<List<String>> builder = ImmutableList.builder();
+        for (final Set<String> conjunction : conjunctions) {
+            builder.add(ImmutableList.copyOf(conjunction));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Every conjunction of the left side joined with every conjunction of the right side, left side outermost. The
+     * right side is iterated again for each conjunction on the left, so only the current pair is held in memory.
+     */
+    private static final class Product implements Iterable<Set<String>> {
+        private final Iterable<Set<String>> left;
+        private final Iterable<Set<String>> right;
+
+        Product(Iterable<Set<String>> left, Iterable<Set<String>> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Iterator<Set<String>> iterator() {
+            final Iterator<Set<String>> lefts = left.iterator();
+            return new AbstractIterator<Set<String>>() {
+                private Set<String> current;
+                private Iterator<Set<String>> rights = Collections.emptyIterator();
+
+                @Override
+                protected Set<String> computeNext() {
+                    while (!rights.hasNext()) {
+                        if (!lefts.hasNext()) {
+                            return endOfData();
+                        }
+                        current = lefts.next();
+                        rights = right.iterator();
+                    }
+                    final Set<String> conjunction = new LinkedHashSet<>(current);
+                    conjunction.addAll(rights.next());
+                    return conjunction;
+                }
+            };
+        }
+    }
+
+    /**
+     * The sizes of a parsed expression, and its expansion once one has been built within the limits.
+     */
+    private static final class Expansion {
+        final byte[] expression;
+        final int terms;
+        final long conjunctions;
+        volatile List<List<String>> list;
+
+        Expansion(byte[] expression, int terms, long conjunctions) {
+            this.expression = expression;
+            this.terms = terms;
+            this.conjunctions = conjunctions;
+        }
+    }
 }
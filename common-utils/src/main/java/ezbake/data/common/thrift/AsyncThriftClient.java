@@ -0,0 +1,100 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Runs calls against a {@link ThriftClientPool} on a dedicated I/O executor and returns their results as futures, so
+ * callers can fan out many calls without blocking a thread of their own per call. Results can be combined with
+ * Guava's {@code Futures} utilities.
+ *
+ * Calls in flight are bounded by the executor size and by the pool's per-endpoint limits; size both together.
+ *
+ * @param <T> the generated service client type
+ */
+public class AsyncThriftClient<T extends EzBakeBaseService.Client> implements Closeable {
+    private final ThriftClientPool<T> pool;
+    private final ListeningExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates a client with its own pool of daemon I/O threads.
+     *
+     * @param pool the pool to borrow clients from; not closed with this client
+     * @param ioThreads the number of calls that may block on I/O at once
+     */
+    public AsyncThriftClient(ThriftClientPool<T> pool, int ioThreads) {
+        this(pool, Executors.newFixedThreadPool(ioThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-thrift-client-%d").build()), true);
+    }
+
+    /**
+     * @param pool the pool to borrow clients from; not closed with this client
+     * @param executor the executor to run calls on; not shut down with this client
+     */
+    public AsyncThriftClient(ThriftClientPool<T> pool, ExecutorService executor) {
+        this(pool, executor, false);
+    }
+
+    private AsyncThriftClient(ThriftClientPool<T> pool, ExecutorService executor, boolean ownsExecutor) {
+        this.pool = pool;
+        this.executor = MoreExecutors.listeningDecorator(executor);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Runs the callback with a pooled client on the I/O executor.
+     *
+     * @return a future that completes with the callback's result, or fails with the exception it threw
+     */
+    public <R> ListenableFuture<R> submit(ServiceKey service, ThriftCallback<? super T, R> callback) {
+        return submit(service, null, callback);
+    }
+
+    /**
+     * Runs the callback like {@link #submit(ServiceKey, ThriftCallback)}, recording its latency under the given method
+     * name in the pool's {@link ThriftClientMetrics}.
+     */
+    public <R> ListenableFuture<R> submit(final ServiceKey service, final String method,
+            final ThriftCallback<? super T, R> callback) {
+        return executor.submit(new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                return pool.execute(service, method, callback);
+            }
+        });
+    }
+
+    /**
+     * Shuts down the I/O threads if this client created them. Calls already submitted are allowed to finish.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+/**
+ * Limits on how requests are grouped by a {@link ThriftCallBatcher}. A batch is sent as soon as it holds
+ * {@link #getMaxBatchSize()} requests, or {@link #getMaxDelayMillis()} after its first request arrived, whichever
+ * comes first.
+ */
+public class BatchPolicy {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5L;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the longest a request waits for others to join its batch
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+}
@@ -0,0 +1,124 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+/**
+ * Deadline, retry and hedging settings for calls made through a {@link ThriftCallExecutor}.
+ *
+ * Retries and hedged requests send the same call more than once, so they are only made for calls marked
+ * {@link #isIdempotent() idempotent}. Only connection-level failures are retried: transport and protocol exceptions,
+ * and application exceptions of type {@code BAD_SEQUENCE_ID}, {@code MISSING_RESULT} or {@code PROTOCOL_ERROR}, which
+ * mean the connection is out of step. Other application exceptions, such as an error raised by the service's handler,
+ * and exceptions declared by the service are returned to the caller as-is.
+ */
+public class CallPolicy {
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 50L;
+    public static final long DEFAULT_MAX_RETRY_BACKOFF_MILLIS = 1000L;
+    public static final long DEFAULT_HEDGE_DELAY_MILLIS = 100L;
+    public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+
+    private long deadlineMillis;
+    private boolean idempotent;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+    private long maxRetryBackoffMillis = DEFAULT_MAX_RETRY_BACKOFF_MILLIS;
+    private boolean hedgingEnabled;
+    private long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+    private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+
+    /**
+     * @return the time a call may take in total, across retries and hedges, or 0 for no deadline
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @return whether calls may safely be sent more than once
+     */
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    public void setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the backoff before the first retry; it doubles on each further retry and is randomly jittered
+     */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public long getMaxRetryBackoffMillis() {
+        return maxRetryBackoffMillis;
+    }
+
+    public void setMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    }
+
+    /**
+     * @return whether a duplicate call is sent to a second endpoint when the first is slow
+     */
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    /**
+     * @return how long to wait before hedging until enough latencies have been observed to use the
+     * {@link #getHedgePercentile() percentile}
+     */
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public void setHedgeDelayMillis(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * @return the percentile (0-1) of recently observed latencies of the same method after which a call is hedged
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+}
@@ -0,0 +1,188 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Circuit breaker for a single endpoint. While closed, every call is allowed and its outcome is recorded. Too many
+ * failed or slow calls open the breaker, which ejects the endpoint from selection. Once the open period has passed,
+ * the breaker is half-open and lets a single probe call through: success closes it again, failure re-opens it. A
+ * probe whose outcome is not reported within another open period, such as one whose client was leaked, re-opens the
+ * breaker as well, so that the next period can send a new probe.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerConfig config;
+    private final Ticker ticker;
+
+    // Ring buffer of the most recent call outcomes while closed
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private long probeStartedAtNanos;
+
+    CircuitBreaker(CircuitBreakerConfig config) {
+        this(config, Ticker.systemTicker());
+    }
+
+    CircuitBreaker(CircuitBreakerConfig config, Ticker ticker) {
+        this.config = config;
+        this.ticker = ticker;
+        this.failed = new boolean[config.getWindowSize()];
+        this.slow = new boolean[config.getWindowSize()];
+    }
+
+    public synchronized State getState() {
+        expireProbe();
+        if (state == State.OPEN && openPeriodElapsed()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Asks to make a call through this breaker. A true result must be followed by {@link #onSuccess} or
+     * {@link #onFailure} so that a half-open breaker can release its probe.
+     *
+     * @return true if the call may go ahead
+     */
+    synchronized boolean allowRequest() {
+        expireProbe();
+        if (state == State.OPEN) {
+            if (!openPeriodElapsed()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            probeStartedAtNanos = ticker.read();
+        }
+        return true;
+    }
+
+    /**
+     * Records a completed call.
+     *
+     * @return true if the call was slow enough to open the breaker
+     */
+    synchronized boolean onSuccess(long durationMillis) {
+        return record(false, durationMillis);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @return true if this failure opened the breaker
+     */
+    synchronized boolean onFailure(long durationMillis) {
+        return record(true, durationMillis);
+    }
+
+    /**
+     * Records an attempt that ended before reaching the endpoint, such as a local pool wait timing out. It does not
+     * count towards the failure rate but frees the probe of a half-open breaker.
+     */
+    synchronized void onIgnored() {
+        probeInFlight = false;
+    }
+
+    private boolean record(boolean isFailure, long durationMillis) {
+        final boolean isSlow = durationMillis >= config.getSlowCallMillis();
+
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (isFailure || isSlow) {
+                open();
+                return true;
+            }
+            reset();
+            return false;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened
+            return false;
+        }
+
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = isFailure;
+        slow[next] = isSlow;
+        failures += isFailure ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        // The window never holds more calls than its size, so a larger minimum could never be reached
+        final int minimumCalls = Math.min(config.getMinimumCalls(), failed.length);
+        if (calls >= minimumCalls && (failures >= config.getFailureRateThreshold() * calls
+                || slowCalls >= config.getSlowCallRateThreshold() * calls)) {
+            open();
+            return true;
+        }
+        return false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = ticker.read();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void expireProbe() {
+        if (state == State.HALF_OPEN && probeInFlight
+                && ticker.read() - probeStartedAtNanos >= TimeUnit.MILLISECONDS.toNanos(config.getOpenMillis())) {
+            probeInFlight = false;
+            open();
+        }
+    }
+
+    private boolean openPeriodElapsed() {
+        return ticker.read() - openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(config.getOpenMillis());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{state=" + state + ", calls=" + calls + ", failures=" + failures + ", slowCalls="
+                + slowCalls + '}';
+    }
+}
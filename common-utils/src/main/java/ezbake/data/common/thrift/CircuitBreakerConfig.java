@@ -0,0 +1,140 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+/**
+ * Thresholds for the per-endpoint {@link CircuitBreaker}s of a {@link ThriftClientPool}. A breaker looks at the
+ * outcome of the last {@code windowSize} calls to its endpoint and opens once at least {@code minimumCalls} have been
+ * seen and either the failure rate or the slow call rate reaches its threshold.
+ */
+public class CircuitBreakerConfig {
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10000L;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+    public static final long DEFAULT_OPEN_MILLIS = 10000L;
+
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private long slowCallMillis = DEFAULT_SLOW_CALL_MILLIS;
+    private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private long openMillis = DEFAULT_OPEN_MILLIS;
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the window size is not positive
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return how many calls must be in the window before the breaker may open; a breaker treats a minimum above the
+     * window size as the window size
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the minimum is not positive
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        if (minimumCalls < 1) {
+            throw new IllegalArgumentException("Minimum calls must be positive: " + minimumCalls);
+        }
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * @return the fraction (0-1] of failed calls in the window that opens the breaker
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the threshold is not in (0-1]
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        checkRate("Failure rate threshold", failureRateThreshold);
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @return how long a call may take before it counts as slow
+     */
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the time is not positive
+     */
+    public void setSlowCallMillis(long slowCallMillis) {
+        if (slowCallMillis < 1) {
+            throw new IllegalArgumentException("Slow call time must be positive: " + slowCallMillis);
+        }
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    /**
+     * @return the fraction (0-1] of slow calls in the window that opens the breaker
+     */
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the threshold is not in (0-1]
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        checkRate("Slow call rate threshold", slowCallRateThreshold);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * @return how long an open breaker keeps its endpoint out of selection before letting a probe call through, and
+     * how long a half-open breaker waits for the probe's outcome before opening again
+     */
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the time is negative
+     */
+    public void setOpenMillis(long openMillis) {
+        if (openMillis < 0) {
+            throw new IllegalArgumentException("Open time must not be negative: " + openMillis);
+        }
+        this.openMillis = openMillis;
+    }
+
+    private static void checkRate(String name, double rate) {
+        // Also rejects NaN
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException(name + " must be in (0-1]: " + rate);
+        }
+    }
+}
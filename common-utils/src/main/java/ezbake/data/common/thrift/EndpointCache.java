@@ -0,0 +1,139 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * In-memory cache of service endpoints. The first lookup for a service goes to the {@link EndpointSource}; after
+ * that lookups are served from memory. Once an entry is older than the refresh interval, the next lookup triggers a
+ * reload on a background thread and keeps getting the previous endpoints until the reload completes. A failed or
+ * empty reload leaves the previous endpoints in place.
+ */
+public class EndpointCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EndpointCache.class);
+
+    private final EndpointSource source;
+    private final ExecutorService ownedExecutor;
+    private final LoadingCache<ServiceKey, List<String>> cache;
+
+    /**
+     * @param source where endpoints are looked up; closed with this cache
+     * @param refreshMillis how long endpoints are served before they are reloaded in the background
+     */
+    public EndpointCache(EndpointSource source, long refreshMillis) {
+        this(source, refreshMillis, Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("endpoint-cache-refresh-%d").build()),
+                Ticker.systemTicker(), true);
+    }
+
+    EndpointCache(EndpointSource source, long refreshMillis, Executor executor, Ticker ticker) {
+        this(source, refreshMillis, executor, ticker, false);
+    }
+
+    private EndpointCache(final EndpointSource source, long refreshMillis, final Executor executor, Ticker ticker,
+            boolean ownsExecutor) {
+        this.source = source;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.cache = CacheBuilder.newBuilder().refreshAfterWrite(refreshMillis, TimeUnit.MILLISECONDS).ticker(ticker)
+                .recordStats().build(new CacheLoader<ServiceKey, List<String>>() {
+                    @Override
+                    public List<String> load(ServiceKey service) throws Exception {
+                        return lookup(service);
+                    }
+
+                    @Override
+                    public ListenableFuture<List<String>> reload(final ServiceKey service, List<String> old) {
+                        final ListenableFutureTask<List<String>> task =
+                                ListenableFutureTask.create(new Callable<List<String>>() {
+                                    @Override
+                                    public List<String> call() throws Exception {
+                                        return lookup(service);
+                                    }
+                                });
+                        executor.execute(task);
+                        return task;
+                    }
+                });
+    }
+
+    /**
+     * @param service the service to look up
+     * @return the service's endpoints as host:port strings, never empty
+     * @throws TException if the service has no cached endpoints and the lookup fails
+     */
+    public List<String> getEndpoints(ServiceKey service) throws TException {
+        try {
+            return cache.get(service);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            final String message = "An error occurred during service discovery for " + service;
+            logger.error(message, e.getCause());
+            throw new TException(message, e.getCause());
+        }
+    }
+
+    /**
+     * Reloads the service's endpoints in the background, for example after none of them could be reached. The
+     * current endpoints are still returned until the reload completes.
+     */
+    public void refresh(ServiceKey service) {
+        cache.refresh(service);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+        cache.invalidateAll();
+        source.close();
+    }
+
+    private List<String> lookup(ServiceKey service) throws Exception {
+        final List<String> endpoints = source.getEndpoints(service);
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new TException("Service discovery returned no endpoints for " + service);
+        }
+        logger.debug("Discovered endpoints for {}: {}", service, endpoints);
+        return ImmutableList.copyOf(endpoints);
+    }
+}
@@ -0,0 +1,69 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import com.google.common.base.Objects;
+
+/**
+ * Pool key for connections to a single endpoint (host:port) of a service. Idle sizing and eviction in the
+ * {@link ThriftClientPool} apply per endpoint.
+ */
+final class EndpointKey {
+    private final ServiceKey service;
+    private final String endpoint;
+
+    EndpointKey(ServiceKey service, String endpoint) {
+        this.service = service;
+        this.endpoint = endpoint;
+    }
+
+    ServiceKey getService() {
+        return service;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    String getHost() {
+        return endpoint.split(":")[0];
+    }
+
+    int getPort() {
+        return Integer.parseInt(endpoint.split(":")[1]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EndpointKey)) {
+            return false;
+        }
+        final EndpointKey other = (EndpointKey) o;
+        return service.equals(other.service) && endpoint.equals(other.endpoint);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(service, endpoint);
+    }
+
+    @Override
+    public String toString() {
+        return service + "@" + endpoint;
+    }
+}
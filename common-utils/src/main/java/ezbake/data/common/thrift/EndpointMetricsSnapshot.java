@@ -0,0 +1,107 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Connection and call measurements for one endpoint of a service, as recorded by
+ * {@link InMemoryThriftClientMetrics}.
+ */
+public final class EndpointMetricsSnapshot {
+    private final String service;
+    private final String endpoint;
+    private final long connectFailures;
+    private final LatencySnapshot connectLatency;
+    private final LatencySnapshot poolWait;
+    private final long inFlight;
+    private final long errors;
+    private final LatencySnapshot callLatency;
+
+    @ConstructorProperties({"service", "endpoint", "connectFailures", "connectLatency", "poolWait", "inFlight",
+            "errors", "callLatency"})
+    public EndpointMetricsSnapshot(String service, String endpoint, long connectFailures,
+            LatencySnapshot connectLatency, LatencySnapshot poolWait, long inFlight, long errors,
+            LatencySnapshot callLatency) {
+        this.service = service;
+        this.endpoint = endpoint;
+        this.connectFailures = connectFailures;
+        this.connectLatency = connectLatency;
+        this.poolWait = poolWait;
+        this.inFlight = inFlight;
+        this.errors = errors;
+        this.callLatency = callLatency;
+    }
+
+    /**
+     * @return the service as appName/dataset
+     */
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * @return the endpoint as host:port
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    /**
+     * @return the time taken to open each successful connection
+     */
+    public LatencySnapshot getConnectLatency() {
+        return connectLatency;
+    }
+
+    /**
+     * @return the time callers waited to borrow a client, including connecting when no idle connection was available
+     */
+    public LatencySnapshot getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * @return the number of clients currently borrowed
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the duration of every call, successful or not
+     */
+    public LatencySnapshot getCallLatency() {
+        return callLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointMetricsSnapshot{service=" + service + ", endpoint=" + endpoint + ", connectFailures="
+                + connectFailures + ", connectLatency=" + connectLatency + ", poolWait=" + poolWait + ", inFlight="
+                + inFlight + ", errors=" + errors + ", callLatency=" + callLatency + '}';
+    }
+}
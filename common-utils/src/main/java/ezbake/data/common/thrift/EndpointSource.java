@@ -0,0 +1,30 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Where an {@link EndpointCache} looks up the endpoints of a service.
+ */
+public interface EndpointSource extends Closeable {
+    /**
+     * @param service the service to look up
+     * @return the service's endpoints as host:port strings
+     * @throws Exception if the lookup failed
+     */
+    List<String> getEndpoints(ServiceKey service) throws Exception;
+}
@@ -0,0 +1,202 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.base.Objects;
+
+/**
+ * Keeps counters and latency histograms per endpoint and per named method in memory, using only atomic operations on
+ * the recording path. Measurements accumulate for the life of the instance; read them with {@link #getEndpoints()}
+ * and {@link #getMethods()}, or over JMX after {@link #registerMBean(String)}.
+ */
+public class InMemoryThriftClientMetrics implements ThriftClientMetrics, ThriftClientMetricsMXBean {
+    private static final String JMX_DOMAIN = "ezbake.data.common.thrift";
+
+    private final ConcurrentMap<EndpointKey, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MethodKey, MethodStats> methods = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+
+    @Override
+    public void connected(ServiceKey service, String endpoint, long nanos) {
+        getEndpointStats(service, endpoint).connectLatency.record(nanos);
+    }
+
+    @Override
+    public void connectFailed(ServiceKey service, String endpoint, long nanos) {
+        getEndpointStats(service, endpoint).connectFailures.incrementAndGet();
+    }
+
+    @Override
+    public void borrowed(ServiceKey service, String endpoint, long waitNanos) {
+        final EndpointStats stats = getEndpointStats(service, endpoint);
+        stats.poolWait.record(waitNanos);
+        stats.inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void released(ServiceKey service, String endpoint) {
+        getEndpointStats(service, endpoint).inFlight.decrementAndGet();
+    }
+
+    @Override
+    public void called(ServiceKey service, String endpoint, String method, long nanos, boolean failed) {
+        final EndpointStats endpointStats = getEndpointStats(service, endpoint);
+        endpointStats.callLatency.record(nanos);
+        if (failed) {
+            endpointStats.errors.incrementAndGet();
+        }
+
+        if (method != null) {
+            final MethodStats methodStats = getMethodStats(new MethodKey(service, method));
+            methodStats.latency.record(nanos);
+            if (failed) {
+                methodStats.errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the current measurements of every endpoint that has been used
+     */
+    @Override
+    public List<EndpointMetricsSnapshot> getEndpoints() {
+        final List<EndpointMetricsSnapshot> snapshots = new ArrayList<>(endpoints.size());
+        for (final Map.Entry<EndpointKey, EndpointStats> entry : endpoints.entrySet()) {
+            final EndpointStats stats = entry.getValue();
+            snapshots.add(new EndpointMetricsSnapshot(entry.getKey().getService().toString(),
+                    entry.getKey().getEndpoint(), stats.connectFailures.get(), stats.connectLatency.snapshot(),
+                    stats.poolWait.snapshot(), stats.inFlight.get(), stats.errors.get(),
+                    stats.callLatency.snapshot()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return the current measurements of every method that has been called by name
+     */
+    @Override
+    public List<MethodMetricsSnapshot> getMethods() {
+        final List<MethodMetricsSnapshot> snapshots = new ArrayList<>(methods.size());
+        for (final Map.Entry<MethodKey, MethodStats> entry : methods.entrySet()) {
+            snapshots.add(new MethodMetricsSnapshot(entry.getKey().service.toString(), entry.getKey().method,
+                    entry.getValue().errors.get(), entry.getValue().latency.snapshot()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param name distinguishes these metrics from those of other pools in the same JVM
+     * @return the name the MBean was registered under
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        final ObjectName registered =
+                new ObjectName(JMX_DOMAIN + ":type=ThriftClientMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        objectName = registered;
+        return registered;
+    }
+
+    /**
+     * Removes the MBean registered by {@link #registerMBean(String)}, if any.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    private EndpointStats getEndpointStats(ServiceKey service, String endpoint) {
+        final EndpointKey key = new EndpointKey(service, endpoint);
+        EndpointStats stats = endpoints.get(key);
+        if (stats == null) {
+            final EndpointStats created = new EndpointStats();
+            stats = endpoints.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private MethodStats getMethodStats(MethodKey key) {
+        MethodStats stats = methods.get(key);
+        if (stats == null) {
+            final MethodStats created = new MethodStats();
+            stats = methods.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static class EndpointStats {
+        final AtomicLong connectFailures = new AtomicLong();
+        final LatencyHistogram connectLatency = new LatencyHistogram();
+        final LatencyHistogram poolWait = new LatencyHistogram();
+        final AtomicLong inFlight = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final LatencyHistogram callLatency = new LatencyHistogram();
+    }
+
+    private static class MethodStats {
+        final AtomicLong errors = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private static final class MethodKey {
+        final ServiceKey service;
+        final String method;
+
+        MethodKey(ServiceKey service, String method) {
+            this.service = service;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MethodKey)) {
+                return false;
+            }
+            final MethodKey other = (MethodKey) o;
+            return service.equals(other.service) && method.equals(other.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(service, method);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A point-in-time summary of recorded durations, in microseconds. Percentiles are approximate, rounded up to a power
+ * of two.
+ */
+public final class LatencySnapshot {
+    private final long count;
+    private final long meanMicros;
+    private final long maxMicros;
+    private final long medianMicros;
+    private final long p90Micros;
+    private final long p99Micros;
+
+    @ConstructorProperties({"count", "meanMicros", "maxMicros", "medianMicros", "p90Micros", "p99Micros"})
+    public LatencySnapshot(long count, long meanMicros, long maxMicros, long medianMicros, long p90Micros,
+            long p99Micros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.maxMicros = maxMicros;
+        this.medianMicros = medianMicros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public long getMedianMicros() {
+        return medianMicros;
+    }
+
+    public long getP90Micros() {
+        return p90Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{count=" + count + ", meanMicros=" + meanMicros + ", maxMicros=" + maxMicros
+                + ", medianMicros=" + medianMicros + ", p90Micros=" + p90Micros + ", p99Micros=" + p99Micros + '}';
+    }
+}
@@ -0,0 +1,61 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.util.Arrays;
+
+/**
+ * The most recent latencies of one kind of call, used to pick hedge delays. The requested percentile is recomputed
+ * after every {@code RECOMPUTE_INTERVAL} new samples rather than on every read.
+ */
+class LatencyWindow {
+    static final int MINIMUM_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final long[] samples;
+    private final double percentile;
+    private int next;
+    private int count;
+    private int sinceComputed;
+    private long cached = -1;
+
+    LatencyWindow(int size, double percentile) {
+        this.samples = new long[size];
+        this.percentile = percentile;
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        sinceComputed++;
+    }
+
+    /**
+     * @return the percentile of the recorded latencies, or -1 if fewer than {@link #MINIMUM_SAMPLES} were recorded
+     */
+    synchronized long getPercentile() {
+        if (count < MINIMUM_SAMPLES) {
+            return -1;
+        }
+        if (cached < 0 || sinceComputed >= RECOMPUTE_INTERVAL) {
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            cached = sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(percentile * count) - 1))];
+            sinceComputed = 0;
+        }
+        return cached;
+    }
+}
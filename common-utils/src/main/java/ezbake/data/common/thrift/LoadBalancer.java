@@ -0,0 +1,110 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the endpoints of a service for a {@link ThriftClientPool} according to a {@link LoadBalancingStrategy},
+ * and tracks the calls each endpoint has in flight. Endpoints that drop out of a service's list stop being tracked
+ * once their calls have finished.
+ */
+class LoadBalancer {
+    private final LoadBalancingStrategy strategy;
+    private final ConcurrentMap<ServiceKey, AtomicInteger> sequences = new ConcurrentHashMap<>();
+    private final ConcurrentMap<EndpointKey, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ServiceKey, List<String>> listed = new ConcurrentHashMap<>();
+
+    LoadBalancer(LoadBalancingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return the endpoints, most preferred first
+     */
+    List<String> order(ServiceKey service, List<String> endpoints) {
+        // The endpoint cache hands out the same list until it is refreshed, so this only prunes after a refresh
+        if (listed.get(service) != endpoints) {
+            listed.put(service, endpoints);
+            prune(service, endpoints);
+        }
+        return strategy.order(service, endpoints, this);
+    }
+
+    void acquired(EndpointKey key) {
+        counter(outstanding, key).incrementAndGet();
+    }
+
+    void released(EndpointKey key) {
+        final AtomicInteger count = outstanding.get(key);
+        if (count != null && count.decrementAndGet() <= 0 && !isListed(key)) {
+            outstanding.remove(key, count);
+        }
+    }
+
+    int getOutstanding(ServiceKey service, String endpoint) {
+        final AtomicInteger count = outstanding.get(new EndpointKey(service, endpoint));
+        return count == null ? 0 : count.get();
+    }
+
+    int nextSequence(ServiceKey service) {
+        return counter(sequences, service).getAndIncrement() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of endpoints whose calls in flight are tracked
+     */
+    int getTrackedEndpoints() {
+        return outstanding.size();
+    }
+
+    /**
+     * Stops tracking endpoints of the service that are no longer listed and have no calls in flight. Endpoints still
+     * in use are dropped as their last call is released.
+     */
+    private void prune(ServiceKey service, List<String> endpoints) {
+        final Set<String> current = new HashSet<>(endpoints);
+        for (final Map.Entry<EndpointKey, AtomicInteger> entry : outstanding.entrySet()) {
+            final EndpointKey key = entry.getKey();
+            if (key.getService().equals(service) && !current.contains(key.getEndpoint())
+                    && entry.getValue().get() <= 0) {
+                outstanding.remove(key, entry.getValue());
+            }
+        }
+    }
+
+    private boolean isListed(EndpointKey key) {
+        final List<String> endpoints = listed.get(key.getService());
+        return endpoints == null || endpoints.contains(key.getEndpoint());
+    }
+
+    private static <K> AtomicInteger counter(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        AtomicInteger count = counters.get(key);
+        if (count == null) {
+            final AtomicInteger created = new AtomicInteger();
+            count = counters.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,111 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a {@link ThriftClientPool} spreads calls across the endpoints of a service. Each strategy orders the
+ * endpoints by preference; the pool uses the first one it can get a connection to.
+ */
+public enum LoadBalancingStrategy {
+    /**
+     * Each call starts one endpoint further along the list than the previous call.
+     */
+    ROUND_ROBIN {
+        @Override
+        List<String> order(ServiceKey service, List<String> endpoints, LoadBalancer balancer) {
+            return rotate(endpoints, balancer.nextSequence(service));
+        }
+    },
+
+    /**
+     * Each call starts at a uniformly random endpoint.
+     */
+    RANDOM {
+        @Override
+        List<String> order(ServiceKey service, List<String> endpoints, LoadBalancer balancer) {
+            return rotate(endpoints, ThreadLocalRandom.current().nextInt(endpoints.size()));
+        }
+    },
+
+    /**
+     * Prefers the endpoints with the fewest calls in flight from this pool, rotating between endpoints that are tied.
+     */
+    LEAST_OUTSTANDING {
+        @Override
+        List<String> order(ServiceKey service, List<String> endpoints, LoadBalancer balancer) {
+            final List<String> rotated = rotate(endpoints, balancer.nextSequence(service));
+
+            // Counts change as calls start and finish, so sort on a snapshot to keep the comparison consistent
+            final int[] counts = new int[rotated.size()];
+            final Integer[] indexes = new Integer[rotated.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = balancer.getOutstanding(service, rotated.get(i));
+                indexes[i] = i;
+            }
+            // A stable sort, so endpoints that are tied stay in rotated order
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(counts[a], counts[b]);
+                }
+            });
+
+            final List<String> ordered = new ArrayList<>(counts.length);
+            for (final Integer index : indexes) {
+                ordered.add(rotated.get(index));
+            }
+            return ordered;
+        }
+    },
+
+    /**
+     * Picks two endpoints at random and prefers the one with fewer calls in flight. Nearly as even as
+     * {@link #LEAST_OUTSTANDING} without every client converging on the same endpoint at once.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        List<String> order(ServiceKey service, List<String> endpoints, LoadBalancer balancer) {
+            final int size = endpoints.size();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final List<String> ordered = rotate(endpoints, random.nextInt(size));
+            if (size > 1) {
+                final int other = 1 + random.nextInt(size - 1);
+                if (balancer.getOutstanding(service, ordered.get(other))
+                        < balancer.getOutstanding(service, ordered.get(0))) {
+                    Collections.swap(ordered, 0, other);
+                }
+            }
+            return ordered;
+        }
+    };
+
+    abstract List<String> order(ServiceKey service, List<String> endpoints, LoadBalancer balancer);
+
+    private static List<String> rotate(List<String> endpoints, int start) {
+        final int size = endpoints.size();
+        final List<String> rotated = new ArrayList<>(size);
+        final int offset = (start % size + size) % size;
+        rotated.addAll(endpoints.subList(offset, size));
+        rotated.addAll(endpoints.subList(0, offset));
+        return rotated;
+    }
+}
@@ -0,0 +1,67 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Call measurements for one named method of a service, across all of its endpoints, as recorded by
+ * {@link InMemoryThriftClientMetrics}.
+ */
+public final class MethodMetricsSnapshot {
+    private final String service;
+    private final String method;
+    private final long errors;
+    private final LatencySnapshot latency;
+
+    @ConstructorProperties({"service", "method", "errors", "latency"})
+    public MethodMetricsSnapshot(String service, String method, long errors, LatencySnapshot latency) {
+        this.service = service;
+        this.method = method;
+        this.errors = errors;
+        this.latency = latency;
+    }
+
+    /**
+     * @return the service as appName/dataset
+     */
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the duration of every call, successful or not
+     */
+    public LatencySnapshot getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodMetricsSnapshot{service=" + service + ", method=" + method + ", errors=" + errors + ", latency="
+                + latency + '}';
+    }
+}
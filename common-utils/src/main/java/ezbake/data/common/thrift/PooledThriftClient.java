@@ -0,0 +1,130 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * A Thrift client borrowed from a {@link ThriftClientPool} together with the transport it owns. Instances are not
+ * thread-safe and must be handed back to the pool they came from once the caller is done with them.
+ *
+ * @param <T> the generated service client type
+ */
+public final class PooledThriftClient<T extends EzBakeBaseService.Client> {
+    private final EndpointKey key;
+    private final Socket socket;
+    private final TTransport transport;
+    private final T client;
+    private volatile long verifiedAtNanos;
+
+    PooledThriftClient(EndpointKey key, Socket socket, TTransport transport, T client) {
+        this.key = key;
+        this.socket = socket;
+        this.transport = transport;
+        this.client = client;
+        this.verifiedAtNanos = System.nanoTime();
+    }
+
+    public T getClient() {
+        return client;
+    }
+
+    public ServiceKey getService() {
+        return key.getService();
+    }
+
+    /**
+     * @return the host:port this client is connected to
+     */
+    public String getEndpoint() {
+        return key.getEndpoint();
+    }
+
+    EndpointKey getKey() {
+        return key;
+    }
+
+    Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Records that the connection was just seen working, by a successful call or health check.
+     */
+    void markVerified() {
+        verifiedAtNanos = System.nanoTime();
+    }
+
+    long getVerifiedAtNanos() {
+        return verifiedAtNanos;
+    }
+
+    long getUnverifiedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - verifiedAtNanos);
+    }
+
+    /**
+     * @return whether the socket is still open locally; a connection the peer has dropped is only detected by
+     * {@link #ping(int)}
+     */
+    boolean isOpen() {
+        return transport.isOpen() && !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+    }
+
+    /**
+     * Calls the service's {@code ping}, waiting at most the given time for the response.
+     *
+     * @return whether the service answered that it is healthy
+     * @throws TException if the connection is broken or the response timed out
+     */
+    boolean ping(int timeoutMillis) throws TException {
+        try {
+            final int socketTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(timeoutMillis);
+            try {
+                return client.ping();
+            } finally {
+                socket.setSoTimeout(socketTimeout);
+            }
+        } catch (final SocketException e) {
+            throw new TTransportException(TTransportException.UNKNOWN, "Unable to set the ping timeout", e);
+        }
+    }
+
+    void close() {
+        transport.close();
+        if (!socket.isClosed()) {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                // ignore, the socket is being discarded
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledThriftClient{" + key + '}';
+    }
+}
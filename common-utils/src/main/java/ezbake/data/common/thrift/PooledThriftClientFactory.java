@@ -0,0 +1,167 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Opens, validates and closes the connections held by a {@link ThriftClientPool}.
+ *
+ * Validation always checks that the socket is still open. A connection that has not been seen working for longer
+ * than the health check interval is also pinged; the pool's evictor validates idle connections in the background, so
+ * borrowers normally only pay for the local check.
+ */
+class PooledThriftClientFactory<T extends EzBakeBaseService.Client>
+        extends BaseKeyedPooledObjectFactory<EndpointKey, PooledThriftClient<T>> {
+    private static final Logger logger = LoggerFactory.getLogger(PooledThriftClientFactory.class);
+
+    private final ThriftClientFactory<T> clientFactory;
+    private final ThriftConnectionConfig connectionConfig;
+    private final long healthCheckIntervalMillis;
+    private final int healthCheckTimeoutMillis;
+    private final ThriftClientMetrics metrics;
+    private final ConcurrentMap<EndpointKey, Long> suspectedAtNanos = new ConcurrentHashMap<>();
+
+    /**
+     * @param healthCheckIntervalMillis how long a connection may go unverified before validating it pings the
+     * service, or a negative number to never ping
+     * @param healthCheckTimeoutMillis how long to wait for the response to a ping
+     * @param metrics receives the time taken to connect
+     */
+    PooledThriftClientFactory(ThriftClientFactory<T> clientFactory, ThriftConnectionConfig connectionConfig,
+            long healthCheckIntervalMillis, int healthCheckTimeoutMillis, ThriftClientMetrics metrics) {
+        this.clientFactory = clientFactory;
+        this.connectionConfig = connectionConfig;
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+        this.healthCheckTimeoutMillis = healthCheckTimeoutMillis;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public PooledThriftClient<T> create(EndpointKey key) throws Exception {
+        logger.info("Trying to connect to " + key.getHost() + " on " + key.getPort());
+
+        final long start = System.nanoTime();
+        final Socket socket;
+        try {
+            socket = openSocket(key);
+        } catch (final TTransportException e) {
+            metrics.connectFailed(key.getService(), key.getEndpoint(), System.nanoTime() - start);
+            throw e;
+        }
+        metrics.connected(key.getService(), key.getEndpoint(), System.nanoTime() - start);
+
+        try {
+            final TTransport transport = connectionConfig.getTransportType().wrap(socket, connectionConfig);
+            return new PooledThriftClient<>(key, socket, transport,
+                    clientFactory.newClient(connectionConfig.getProtocolType().getProtocol(transport)));
+        } catch (final Exception e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private Socket openSocket(EndpointKey key) throws TTransportException {
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(connectionConfig.isTcpNoDelay());
+            socket.setSoTimeout(connectionConfig.getSocketTimeoutMillis());
+            if (connectionConfig.getSendBufferSize() > 0) {
+                socket.setSendBufferSize(connectionConfig.getSendBufferSize());
+            }
+            if (connectionConfig.getReceiveBufferSize() > 0) {
+                socket.setReceiveBufferSize(connectionConfig.getReceiveBufferSize());
+            }
+            socket.connect(new InetSocketAddress(key.getHost(), key.getPort()),
+                    connectionConfig.getConnectTimeoutMillis());
+            return socket;
+        } catch (final IOException e) {
+            closeQuietly(socket);
+            throw new TTransportException(TTransportException.NOT_OPEN, "Unable to connect to " + key, e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public PooledObject<PooledThriftClient<T>> wrap(PooledThriftClient<T> client) {
+        return new DefaultPooledObject<>(client);
+    }
+
+    @Override
+    public boolean validateObject(EndpointKey key, PooledObject<PooledThriftClient<T>> pooled) {
+        final PooledThriftClient<T> client = pooled.getObject();
+        if (!client.isOpen()) {
+            logger.info("Discarding closed connection to {}", key);
+            return false;
+        }
+        if (!isSuspect(key, client) && (healthCheckIntervalMillis < 0
+                || client.getUnverifiedMillis() < healthCheckIntervalMillis)) {
+            return true;
+        }
+
+        try {
+            if (client.ping(healthCheckTimeoutMillis)) {
+                client.markVerified();
+                return true;
+            }
+            logger.warn("Discarding connection to {}, the service reported itself unhealthy", key);
+        } catch (final TException | RuntimeException e) {
+            logger.warn("Discarding connection to " + key + ", health check failed: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Marks every connection to the endpoint that has not been verified since now as suspect, so they are pinged the
+     * next time they are validated. Called when one of the endpoint's connections broke, since the others were
+     * probably broken by the same cause, such as a server restart.
+     */
+    void suspect(EndpointKey key) {
+        suspectedAtNanos.put(key, System.nanoTime());
+    }
+
+    private boolean isSuspect(EndpointKey key, PooledThriftClient<T> client) {
+        final Long suspectedAt = suspectedAtNanos.get(key);
+        return suspectedAt != null && client.getVerifiedAtNanos() - suspectedAt < 0;
+    }
+
+    @Override
+    public void destroyObject(EndpointKey key, PooledObject<PooledThriftClient<T>> pooled) {
+        logger.debug("Closing connection to {}", key);
+        pooled.getObject().close();
+    }
+}
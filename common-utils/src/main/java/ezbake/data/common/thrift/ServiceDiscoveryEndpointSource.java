@@ -0,0 +1,98 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.ezdiscovery.ServiceDiscoveryClient;
+
+/**
+ * Looks up endpoints with EzBake service discovery. A single ZooKeeper connection is opened on first use and kept for
+ * the lifetime of the source. Lookups may run concurrently; {@link #close()} waits for those in progress, and later
+ * lookups fail.
+ */
+public class ServiceDiscoveryEndpointSource implements EndpointSource {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceDiscoveryEndpointSource.class);
+
+    private final String zookeeper;
+    // Lookups hold the read lock while they use the client; creating and closing it take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ServiceDiscoveryClient serviceDiscoveryClient;
+    private boolean closed;
+
+    public ServiceDiscoveryEndpointSource(String zookeeper) {
+        this.zookeeper = zookeeper;
+    }
+
+    /**
+     * @throws IllegalStateException if the source has been closed
+     */
+    @Override
+    public List<String> getEndpoints(ServiceKey service) throws Exception {
+        logger.info("Attempting to get endpoints for appName: '" + service.getAppName() + "', and dataset: '"
+                + service.getDataset() + "'");
+        lock.readLock().lock();
+        try {
+            ServiceDiscoveryClient client = serviceDiscoveryClient;
+            if (client == null) {
+                lock.readLock().unlock();
+                try {
+                    connect();
+                } finally {
+                    lock.readLock().lock();
+                }
+                client = serviceDiscoveryClient;
+            }
+            if (closed) {
+                throw new IllegalStateException("Endpoint source closed");
+            }
+            return client.getEndpoints(service.getAppName(), service.getDataset());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void connect() {
+        lock.writeLock().lock();
+        try {
+            if (serviceDiscoveryClient == null && !closed) {
+                serviceDiscoveryClient = new ServiceDiscoveryClient(zookeeper);
+                logger.info("Connected for service discovery to " + zookeeper);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            if (serviceDiscoveryClient != null) {
+                serviceDiscoveryClient.close();
+                serviceDiscoveryClient = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Identifies a discoverable Thrift service by its application name and dataset (service name).
+ */
+public final class ServiceKey {
+    private final String appName;
+    private final String dataset;
+
+    public ServiceKey(String appName, String dataset) {
+        this.appName = Preconditions.checkNotNull(appName, "appName");
+        this.dataset = Preconditions.checkNotNull(dataset, "dataset");
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public String getDataset() {
+        return dataset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ServiceKey)) {
+            return false;
+        }
+        final ServiceKey other = (ServiceKey) o;
+        return appName.equals(other.appName) && dataset.equals(other.dataset);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(appName, dataset);
+    }
+
+    @Override
+    public String toString() {
+        return appName + "/" + dataset;
+    }
+}
@@ -0,0 +1,37 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.util.List;
+
+import org.apache.thrift.TException;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Sends a batch of requests collected by a {@link ThriftCallBatcher} over one pooled client. Services with a batch
+ * method call it once; others can pipeline the generated client's {@code send_<method>} calls for every request
+ * before the matching {@code recv_<method>} calls, so the batch still costs a single round trip.
+ *
+ * @param <T> the generated service client type
+ * @param <Q> the type of a single request
+ * @param <R> the type of a single result
+ */
+public interface ThriftBatchCallback<T extends EzBakeBaseService.Client, Q, R> {
+    /**
+     * @return one result per request, in the order of the requests
+     */
+    List<R> call(T client, List<Q> requests) throws TException;
+}
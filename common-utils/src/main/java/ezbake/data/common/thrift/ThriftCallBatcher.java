@@ -0,0 +1,232 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Coalesces single requests to one method of a service into batches, so many small calls share one pooled client and
+ * one round trip. Each request gets its own future, completed with its result once its batch returns, or failed with
+ * the batch's exception.
+ *
+ * Batches are sent on the batcher's executor and may be in flight concurrently; the pool's per-endpoint limits bound
+ * how many.
+ *
+ * @param <T> the generated service client type
+ * @param <Q> the type of a single request
+ * @param <R> the type of a single result
+ */
+public class ThriftCallBatcher<T extends EzBakeBaseService.Client, Q, R> implements Closeable {
+    private final ThriftClientPool<T> pool;
+    private final ServiceKey service;
+    private final String method;
+    private final ThriftBatchCallback<? super T, Q, R> callback;
+    private final BatchPolicy policy;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+
+    private final Object lock = new Object();
+    private List<PendingCall<Q, R>> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+    private boolean closed;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a batcher with its own pool of daemon threads for sending batches.
+     *
+     * @param pool the pool to borrow clients from; not closed with this batcher
+     * @param method name of the batched call, used for metrics
+     * @param ioThreads the number of batches that may be in flight at once
+     */
+    public ThriftCallBatcher(ThriftClientPool<T> pool, ServiceKey service, String method,
+            ThriftBatchCallback<? super T, Q, R> callback, BatchPolicy policy, int ioThreads) {
+        this(pool, service, method, callback, policy, Executors.newScheduledThreadPool(ioThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("thrift-call-batcher-%d").build()), true);
+    }
+
+    /**
+     * @param pool the pool to borrow clients from; not closed with this batcher
+     * @param method name of the batched call, used for metrics
+     * @param executor times and sends batches; not shut down with this batcher
+     */
+    public ThriftCallBatcher(ThriftClientPool<T> pool, ServiceKey service, String method,
+            ThriftBatchCallback<? super T, Q, R> callback, BatchPolicy policy, ScheduledExecutorService executor) {
+        this(pool, service, method, callback, policy, executor, false);
+    }
+
+    private ThriftCallBatcher(ThriftClientPool<T> pool, ServiceKey service, String method,
+            ThriftBatchCallback<? super T, Q, R> callback, BatchPolicy policy, ScheduledExecutorService executor,
+            boolean ownsExecutor) {
+        this.pool = pool;
+        this.service = service;
+        this.method = method;
+        this.callback = callback;
+        this.policy = policy;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Adds a request to the current batch, sending the batch if it is now full.
+     *
+     * @return a future that completes with the request's result, or fails with a
+     * {@link RejectedExecutionException} if the executor would not take the batch
+     * @throws IllegalStateException if the batcher has been closed
+     */
+    public ListenableFuture<R> submit(Q request) {
+        final SettableFuture<R> result = SettableFuture.create();
+        List<PendingCall<Q, R>> batch = null;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Batcher for " + method + " on " + service + " is closed");
+            }
+            pending.add(new PendingCall<>(request, result));
+            if (pending.size() >= policy.getMaxBatchSize()) {
+                batch = takePending();
+            } else if (pending.size() == 1) {
+                try {
+                    flushTask = executor.schedule(flush, policy.getMaxDelayMillis(), TimeUnit.MILLISECONDS);
+                } catch (final RejectedExecutionException e) {
+                    fail(takePending(), e);
+                }
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the current batch without waiting for it to fill up or for its delay to pass.
+     */
+    public void flush() {
+        final List<PendingCall<Q, R>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Sends the current batch and stops accepting requests. Threads created by this batcher are shut down once the
+     * batches already sent have completed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private List<PendingCall<Q, R>> takePending() {
+        final List<PendingCall<Q, R>> batch = pending;
+        pending = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void send(final List<PendingCall<Q, R>> batch) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    call(batch);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void call(List<PendingCall<Q, R>> batch) {
+        final List<Q> requests = new ArrayList<>(batch.size());
+        for (final PendingCall<Q, R> call : batch) {
+            requests.add(call.request);
+        }
+
+        try {
+            final List<R> results = pool.execute(service, method, new ThriftCallback<T, List<R>>() {
+                @Override
+                public List<R> call(T client) throws TException {
+                    return callback.call(client, requests);
+                }
+            });
+            if (results == null || results.size() != requests.size()) {
+                throw new TApplicationException(TApplicationException.MISSING_RESULT, "Batch call " + method
+                        + " returned " + (results == null ? 0 : results.size()) + " results for " + requests.size()
+                        + " requests");
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.set(results.get(i));
+            }
+        } catch (final Throwable e) {
+            // Every caller waits on its future, so fail them all even for an error, then let the error go on
+            fail(batch, e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private static <Q, R> void fail(List<PendingCall<Q, R>> batch, Throwable e) {
+        for (final PendingCall<Q, R> call : batch) {
+            call.result.setException(e);
+        }
+    }
+
+    private static class PendingCall<Q, R> {
+        final Q request;
+        final SettableFuture<R> result;
+
+        PendingCall(Q request, SettableFuture<R> result) {
+            this.request = request;
+            this.result = result;
+        }
+    }
+}
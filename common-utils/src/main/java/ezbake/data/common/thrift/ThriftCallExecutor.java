@@ -0,0 +1,296 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Makes calls through a {@link ThriftClientPool} under a {@link CallPolicy}: calls are bounded by a deadline,
+ * idempotent calls that fail at the connection level are retried with jittered exponential backoff on another
+ * endpoint, and, if enabled, idempotent calls still running after the observed latency percentile of their method
+ * are duplicated to a second endpoint, with the first successful response winning.
+ *
+ * Attempts run on the executor's own I/O threads so the caller can stop waiting at the deadline. An attempt that is
+ * abandoned keeps its connection until the service responds or the socket timeout expires.
+ *
+ * @param <T> the generated service client type
+ */
+public class ThriftCallExecutor<T extends EzBakeBaseService.Client> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ThriftCallExecutor.class);
+
+    private static final int LATENCY_WINDOW_SIZE = 256;
+
+    private final ThriftClientPool<T> pool;
+    private final CallPolicy policy;
+    private final ListeningExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an executor with its own pool of daemon I/O threads.
+     *
+     * @param pool the pool to borrow clients from; not closed with this executor
+     * @param ioThreads the number of attempts that may block on I/O at once
+     */
+    public ThriftCallExecutor(ThriftClientPool<T> pool, CallPolicy policy, int ioThreads) {
+        this(pool, policy, Executors.newFixedThreadPool(ioThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("thrift-call-executor-%d").build()), true);
+    }
+
+    /**
+     * @param pool the pool to borrow clients from; not closed with this executor
+     * @param executor runs the attempts; not shut down with this executor
+     */
+    public ThriftCallExecutor(ThriftClientPool<T> pool, CallPolicy policy, ExecutorService executor) {
+        this(pool, policy, executor, false);
+    }
+
+    private ThriftCallExecutor(ThriftClientPool<T> pool, CallPolicy policy, ExecutorService executor,
+            boolean ownsExecutor) {
+        this.pool = pool;
+        this.policy = policy;
+        this.executor = MoreExecutors.listeningDecorator(executor);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Runs the callback with a pooled client under this executor's policy.
+     *
+     * @param service the service to call
+     * @param method name of the call, used to group latencies for hedging and metrics
+     * @param callback the call to make
+     * @return the callback's result
+     * @throws TException the last failure, or a {@link TTransportException#TIMED_OUT} exception if the deadline
+     * passed first
+     */
+    public <R> R execute(ServiceKey service, String method, ThriftCallback<? super T, R> callback)
+            throws TException {
+        final long start = System.nanoTime();
+        final long deadline = policy.getDeadlineMillis() > 0
+                ? start + TimeUnit.MILLISECONDS.toNanos(policy.getDeadlineMillis()) : Long.MAX_VALUE;
+        final Set<String> usedEndpoints = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final LatencyWindow window = getLatencyWindow(method);
+
+        for (int retry = 0; ; retry++) {
+            try {
+                return attempt(service, method, callback, usedEndpoints, window, deadline);
+            } catch (final TException e) {
+                if (!isRetryable(e, retry)) {
+                    throw e;
+                }
+
+                final long backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis(retry));
+                if (System.nanoTime() + backoffNanos >= deadline) {
+                    throw e;
+                }
+                logger.warn("Retrying " + method + " on " + service + " after " + e.getMessage());
+                sleep(backoffNanos);
+            }
+        }
+    }
+
+    /**
+     * Stops the I/O threads if this executor created them. Attempts already running are allowed to finish.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private <R> R attempt(ServiceKey service, String method, ThriftCallback<? super T, R> callback,
+            Set<String> usedEndpoints, LatencyWindow window, long deadline) throws TException {
+        final ListenableFuture<R> primary = submit(service, method, callback, usedEndpoints, window);
+        if (!policy.isHedgingEnabled() || !policy.isIdempotent()) {
+            return await(primary, deadline, primary);
+        }
+
+        long hedgeDelay = window.getPercentile();
+        if (hedgeDelay < 0) {
+            hedgeDelay = policy.getHedgeDelayMillis();
+        }
+        final long hedgeAt = Math.min(deadline, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hedgeDelay));
+        try {
+            return primary.get(Math.max(0, hedgeAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            if (hedgeAt >= deadline) {
+                primary.cancel(true);
+                throw deadlineExceeded();
+            }
+        } catch (final InterruptedException e) {
+            primary.cancel(true);
+            throw interrupted(e);
+        } catch (final ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        final ListenableFuture<R> hedge = submit(service, method, callback, usedEndpoints, window);
+        return await(firstSuccessful(primary, hedge), deadline, primary, hedge);
+    }
+
+    private <R> ListenableFuture<R> submit(final ServiceKey service, final String method,
+            final ThriftCallback<? super T, R> callback, final Set<String> usedEndpoints, final LatencyWindow window) {
+        return executor.submit(new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                final long start = System.nanoTime();
+                final R result = pool.execute(service, method, callback, usedEndpoints);
+                window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return result;
+            }
+        });
+    }
+
+    /**
+     * @return a future that succeeds with the first of the two to succeed, or fails with the last failure
+     */
+    private static <R> ListenableFuture<R> firstSuccessful(ListenableFuture<R> a, ListenableFuture<R> b) {
+        final SettableFuture<R> result = SettableFuture.create();
+        final AtomicInteger remaining = new AtomicInteger(2);
+        completeOnSuccess(a, result, remaining);
+        completeOnSuccess(b, result, remaining);
+        return result;
+    }
+
+    private static <R> void completeOnSuccess(final ListenableFuture<R> future, final SettableFuture<R> result,
+            final AtomicInteger remaining) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(future.get());
+                } catch (final ExecutionException e) {
+                    if (remaining.decrementAndGet() == 0) {
+                        result.setException(e.getCause());
+                    }
+                } catch (final CancellationException | InterruptedException e) {
+                    if (remaining.decrementAndGet() == 0) {
+                        result.setException(e);
+                    }
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    @SafeVarargs
+    private static <R> R await(ListenableFuture<R> future, long deadline, ListenableFuture<R>... attempts)
+            throws TException {
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            throw deadlineExceeded();
+        } catch (final InterruptedException e) {
+            throw interrupted(e);
+        } catch (final ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            for (final ListenableFuture<R> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    private boolean isRetryable(TException e, int retry) {
+        return policy.isIdempotent() && retry < policy.getMaxRetries() && ThriftClientPool.isConnectionError(e)
+                && !(e instanceof DeadlineExceededException);
+    }
+
+    private long backoffMillis(int retry) {
+        final long ceiling = Math.min(policy.getMaxRetryBackoffMillis(),
+                policy.getRetryBackoffMillis() << Math.min(retry, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private LatencyWindow getLatencyWindow(String method) {
+        LatencyWindow window = latencies.get(method);
+        if (window == null) {
+            final LatencyWindow created = new LatencyWindow(LATENCY_WINDOW_SIZE, policy.getHedgePercentile());
+            window = latencies.putIfAbsent(method, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        return window;
+    }
+
+    private static void sleep(long nanos) throws TException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (final InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private static TException unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof TException) {
+            return (TException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new TException(cause);
+    }
+
+    private static TTransportException deadlineExceeded() {
+        return new DeadlineExceededException();
+    }
+
+    private static TException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new TException("Interrupted while waiting for a call", e);
+    }
+
+    private static class DeadlineExceededException extends TTransportException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException() {
+            super(TTransportException.TIMED_OUT, "Call deadline exceeded");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import org.apache.thrift.TException;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Work performed with a pooled client by {@link ThriftClientPool#execute(ServiceKey, ThriftCallback)}. The client
+ * must not be retained after {@link #call} returns.
+ *
+ * @param <T> the generated service client type
+ * @param <R> result type
+ */
+public interface ThriftCallback<T extends EzBakeBaseService.Client, R> {
+    R call(T client) throws TException;
+}
@@ -0,0 +1,97 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Creates generated Thrift service clients of one type. The client's {@code (TProtocol)} constructor is looked up
+ * once per class and shared by every factory for that class, so creating a client costs a single constructor call.
+ *
+ * @param <T> the generated service client type
+ */
+public final class ThriftClientFactory<T extends EzBakeBaseService.Client> {
+    private static final ConcurrentMap<Class<?>, ThriftClientFactory<?>> factories = new ConcurrentHashMap<>();
+
+    private final Class<T> clientClass;
+    private final Constructor<T> constructor;
+
+    private ThriftClientFactory(Class<T> clientClass) {
+        this.clientClass = clientClass;
+        try {
+            this.constructor = clientClass.getConstructor(TProtocol.class);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalArgumentException(clientClass.getName() + " has no public (TProtocol) constructor", e);
+        }
+    }
+
+    /**
+     * @param clientClass the generated service client class, e.g. {@code MyService.Client.class}
+     * @return the factory for the class
+     * @throws IllegalArgumentException if the class has no public {@code (TProtocol)} constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends EzBakeBaseService.Client> ThriftClientFactory<T> forClass(Class<T> clientClass) {
+        ThriftClientFactory<?> factory = factories.get(clientClass);
+        if (factory == null) {
+            final ThriftClientFactory<T> created = new ThriftClientFactory<>(clientClass);
+            factory = factories.putIfAbsent(clientClass, created);
+            if (factory == null) {
+                factory = created;
+            }
+        }
+        return (ThriftClientFactory<T>) factory;
+    }
+
+    /**
+     * @param clientClassName the fully qualified name of a generated service client class
+     * @return the factory for the class
+     * @throws ClassNotFoundException if the class cannot be loaded
+     * @throws ClassCastException if the class is not an {@link EzBakeBaseService.Client}
+     */
+    public static ThriftClientFactory<? extends EzBakeBaseService.Client> forClassName(String clientClassName)
+            throws ClassNotFoundException {
+        return forClass(Class.forName(clientClassName).asSubclass(EzBakeBaseService.Client.class));
+    }
+
+    public Class<T> getClientClass() {
+        return clientClass;
+    }
+
+    /**
+     * @param protocol the protocol of an open connection
+     * @return a new client using the protocol for both input and output
+     */
+    public T newClient(TProtocol protocol) throws TException {
+        try {
+            return constructor.newInstance(protocol);
+        } catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new TException("Unable to create " + clientClass.getName(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ThriftClientFactory{" + clientClass.getName() + '}';
+    }
+}
@@ -0,0 +1,52 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+/**
+ * Receives the measurements a {@link ThriftClientPool} takes of its connections and calls. Implementations are called
+ * on the calling threads, so they must be thread-safe and cheap; {@link InMemoryThriftClientMetrics} is the default.
+ *
+ * Endpoints are given as host:port and durations in nanoseconds.
+ */
+public interface ThriftClientMetrics {
+    /**
+     * A new connection to the endpoint was opened.
+     */
+    void connected(ServiceKey service, String endpoint, long nanos);
+
+    /**
+     * Opening a connection to the endpoint failed.
+     */
+    void connectFailed(ServiceKey service, String endpoint, long nanos);
+
+    /**
+     * A client for the endpoint was borrowed after waiting the given time, which includes connecting if no idle
+     * connection was available.
+     */
+    void borrowed(ServiceKey service, String endpoint, long waitNanos);
+
+    /**
+     * A client borrowed from the endpoint was returned to the pool or invalidated.
+     */
+    void released(ServiceKey service, String endpoint);
+
+    /**
+     * A call made through the pool completed.
+     *
+     * @param method name of the call, or null if the caller did not name it
+     * @param failed whether the call threw an exception
+     */
+    void called(ServiceKey service, String endpoint, String method, long nanos, boolean failed);
+}
@@ -0,0 +1,378 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * A bounded, thread-safe pool of Thrift clients for discoverable services. Connections are pooled per endpoint of
+ * each (appName, dataset) service, so concurrent callers each get their own client and socket instead of sharing a
+ * single, non-thread-safe one.
+ *
+ * Each endpoint has a {@link CircuitBreaker}. Endpoints whose calls keep failing or running slowly are ejected
+ * from selection, and their idle connections are closed, until a probe call succeeds again.
+ *
+ * Callers either use {@link #execute(ServiceKey, ThriftCallback)}, or pair {@link #borrowClient(ServiceKey)} with
+ * {@link #returnClient(PooledThriftClient)} (or {@link #invalidateClient(PooledThriftClient)} if the connection is
+ * no longer usable) in a finally block.
+ *
+ * A pool holds clients of a single generated type. Applications that talk to several services create one pool per
+ * client type and can share an {@link EndpointCache} between them.
+ *
+ * @param <T> the generated service client type
+ */
+public class ThriftClientPool<T extends EzBakeBaseService.Client> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ThriftClientPool.class);
+
+    private final EndpointCache endpointCache;
+    private final boolean ownsEndpointCache;
+    private final LoadBalancer loadBalancer;
+    private final CircuitBreakerConfig circuitBreakerConfig;
+    private final ThriftClientMetrics metrics;
+    private final ConcurrentMap<EndpointKey, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final PooledThriftClientFactory<T> connectionFactory;
+    private final GenericKeyedObjectPool<EndpointKey, PooledThriftClient<T>> pool;
+
+    /**
+     * Creates a pool that discovers endpoints through the given ZooKeeper connect string.
+     */
+    public ThriftClientPool(String zookeeper, ThriftClientFactory<T> clientFactory, ThriftClientPoolConfig config) {
+        this(new EndpointCache(new ServiceDiscoveryEndpointSource(zookeeper), config.getEndpointRefreshMillis()),
+                true, clientFactory, config);
+    }
+
+    /**
+     * Creates a pool that looks up endpoints in a cache that may be shared with other pools. The cache is not closed
+     * with this pool.
+     */
+    public ThriftClientPool(EndpointCache endpointCache, ThriftClientFactory<T> clientFactory,
+            ThriftClientPoolConfig config) {
+        this(endpointCache, false, clientFactory, config);
+    }
+
+    private ThriftClientPool(EndpointCache endpointCache, boolean ownsEndpointCache,
+            ThriftClientFactory<T> clientFactory, ThriftClientPoolConfig config) {
+        this.endpointCache = endpointCache;
+        this.ownsEndpointCache = ownsEndpointCache;
+        this.loadBalancer = new LoadBalancer(config.getLoadBalancingStrategy());
+        this.circuitBreakerConfig = config.getCircuitBreakerConfig();
+        this.metrics = config.getMetrics();
+        this.connectionFactory = new PooledThriftClientFactory<>(clientFactory, config.getConnectionConfig(),
+                config.getHealthCheckIntervalMillis(), config.getHealthCheckTimeoutMillis(), metrics);
+        this.pool = new GenericKeyedObjectPool<>(connectionFactory, config);
+        // The keyed pool's constructor schedules its evictor with the min evictable idle time as the period, so
+        // reschedule it at the configured interval
+        pool.setTimeBetweenEvictionRunsMillis(config.getTimeBetweenEvictionRunsMillis());
+    }
+
+    /**
+     * Borrows a connected client for the given service, waiting up to the configured max wait time if the pool is
+     * exhausted. The endpoint is chosen by the configured {@link LoadBalancingStrategy}, skipping endpoints whose
+     * circuit breaker is open and falling back to the other endpoints if it cannot be reached.
+     *
+     * @param service the service to connect to
+     * @return a client that must be handed back with {@link #returnClient} or {@link #invalidateClient}
+     * @throws TException if no endpoint of the service could provide a connection
+     */
+    public PooledThriftClient<T> borrowClient(ServiceKey service) throws TException {
+        return borrowClient(service, Collections.<String>emptySet());
+    }
+
+    /**
+     * Borrows a client like {@link #borrowClient(ServiceKey)}, preferring endpoints other than the given ones. The
+     * avoided endpoints are still used if no other endpoint can provide a connection.
+     */
+    PooledThriftClient<T> borrowClient(ServiceKey service, Collection<String> avoidEndpoints) throws TException {
+        List<String> serviceEndpoints = loadBalancer.order(service, endpointCache.getEndpoints(service));
+        if (!avoidEndpoints.isEmpty()) {
+            final List<String> preferred = new ArrayList<>(serviceEndpoints);
+            preferred.removeAll(avoidEndpoints);
+            for (final String endpoint : serviceEndpoints) {
+                if (avoidEndpoints.contains(endpoint)) {
+                    preferred.add(endpoint);
+                }
+            }
+            serviceEndpoints = preferred;
+        }
+
+        Exception lastError = null;
+        for (final String endpoint : serviceEndpoints) {
+            final EndpointKey key = new EndpointKey(service, endpoint);
+            final CircuitBreaker breaker = getCircuitBreaker(key);
+            if (!breaker.allowRequest()) {
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            try {
+                final PooledThriftClient<T> client = pool.borrowObject(key);
+                loadBalancer.acquired(key);
+                metrics.borrowed(service, endpoint, System.nanoTime() - start);
+                return client;
+            } catch (final InterruptedException e) {
+                // The caller gave up, which says nothing about the endpoint
+                breaker.onIgnored();
+                Thread.currentThread().interrupt();
+                throw new TException("Interrupted while waiting for a connection to " + endpoint + " for " + service,
+                        e);
+            } catch (final NoSuchElementException e) {
+                // Timed out waiting for this endpoint's connections, which says nothing about its health
+                logger.warn("Unable to obtain a connection to " + endpoint + " for " + service + ": " + e.getMessage());
+                breaker.onIgnored();
+                lastError = e;
+            } catch (final Exception e) {
+                logger.error("Unable to obtain a connection to " + endpoint + " for " + service, e);
+                if (breaker.onFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))) {
+                    ejected(key);
+                }
+                lastError = e;
+            }
+        }
+
+        if (lastError == null) {
+            throw new TTransportException(TTransportException.NOT_OPEN,
+                    "Every endpoint of " + service + " is ejected by its circuit breaker");
+        }
+
+        // None of the known endpoints worked, so the service may have moved
+        endpointCache.refresh(service);
+        throw new TTransportException(TTransportException.NOT_OPEN,
+                "Unable to obtain a connection to any endpoint of " + service, lastError);
+    }
+
+    /**
+     * Returns a healthy client to the pool. Calls made on a borrowed client are not timed, so they count towards the
+     * endpoint's failure rate but not its slow call rate; use {@link #execute(ServiceKey, ThriftCallback)} for both.
+     */
+    public void returnClient(PooledThriftClient<T> client) {
+        returnClient(client, 0);
+    }
+
+    private void returnClient(PooledThriftClient<T> client, long callMillis) {
+        client.markVerified();
+        loadBalancer.released(client.getKey());
+        metrics.released(client.getService(), client.getEndpoint());
+        if (getCircuitBreaker(client.getKey()).onSuccess(callMillis)) {
+            ejected(client.getKey());
+        }
+        pool.returnObject(client.getKey(), client);
+    }
+
+    /**
+     * Closes the client's connection and removes it from the pool. Use this instead of {@link #returnClient} when a
+     * call failed in a way that leaves the connection unusable. The endpoint's idle connections are health checked
+     * before they are next handed out.
+     */
+    public void invalidateClient(PooledThriftClient<T> client) {
+        invalidateClient(client, 0);
+    }
+
+    private void invalidateClient(PooledThriftClient<T> client, long callMillis) {
+        connectionFactory.suspect(client.getKey());
+        loadBalancer.released(client.getKey());
+        metrics.released(client.getService(), client.getEndpoint());
+        if (getCircuitBreaker(client.getKey()).onFailure(callMillis)) {
+            ejected(client.getKey());
+        }
+        destroy(client);
+    }
+
+    /**
+     * Borrows a client, runs the callback with it and hands the client back, invalidating it if the call broke the
+     * connection. A runtime exception thrown by the callback is the caller's own failure, so the client is handed back
+     * without counting the call for or against the endpoint. An error thrown by the callback may have left the client
+     * part way through a call, so the client is discarded, again without counting the call against the endpoint.
+     */
+    public <R> R execute(ServiceKey service, ThriftCallback<? super T, R> callback) throws TException {
+        return execute(service, null, callback, null);
+    }
+
+    /**
+     * Runs the callback like {@link #execute(ServiceKey, ThriftCallback)}, recording its latency in the pool's
+     * {@link ThriftClientMetrics} under the given method name as well as under the endpoint.
+     */
+    public <R> R execute(ServiceKey service, String method, ThriftCallback<? super T, R> callback)
+            throws TException {
+        return execute(service, method, callback, null);
+    }
+
+    /**
+     * Runs the callback like {@link #execute(ServiceKey, String, ThriftCallback)}. If {@code usedEndpoints} is given,
+     * the client is preferably borrowed from an endpoint not in the set, and the endpoint it came from is then added
+     * to the set.
+     */
+    <R> R execute(ServiceKey service, String method, ThriftCallback<? super T, R> callback,
+            Set<String> usedEndpoints) throws TException {
+        final PooledThriftClient<T> client;
+        if (usedEndpoints == null) {
+            client = borrowClient(service);
+        } else {
+            client = borrowClient(service, usedEndpoints);
+            usedEndpoints.add(client.getEndpoint());
+        }
+        final long start = System.nanoTime();
+        boolean failed = true;
+        boolean broken = false;
+        boolean callerError = false;
+        boolean abandoned = false;
+        try {
+            final R result = callback.call(client.getClient());
+            failed = false;
+            return result;
+        } catch (final TException e) {
+            broken = isConnectionError(e);
+            throw e;
+        } catch (final RuntimeException e) {
+            callerError = true;
+            throw e;
+        } catch (final Error e) {
+            abandoned = true;
+            throw e;
+        } finally {
+            final long callNanos = System.nanoTime() - start;
+            metrics.called(service, client.getEndpoint(), method, callNanos, failed);
+            if (broken) {
+                invalidateClient(client, TimeUnit.NANOSECONDS.toMillis(callNanos));
+            } else if (abandoned) {
+                discardUnrecorded(client);
+            } else if (callerError) {
+                returnUnrecorded(client);
+            } else {
+                returnClient(client, TimeUnit.NANOSECONDS.toMillis(callNanos));
+            }
+        }
+    }
+
+    /**
+     * Returns a client to the pool without recording the call in the endpoint's circuit breaker.
+     */
+    private void returnUnrecorded(PooledThriftClient<T> client) {
+        loadBalancer.released(client.getKey());
+        metrics.released(client.getService(), client.getEndpoint());
+        getCircuitBreaker(client.getKey()).onIgnored();
+        pool.returnObject(client.getKey(), client);
+    }
+
+    /**
+     * Closes a client and removes it from the pool without recording the call in the endpoint's circuit breaker.
+     */
+    private void discardUnrecorded(PooledThriftClient<T> client) {
+        loadBalancer.released(client.getKey());
+        metrics.released(client.getService(), client.getEndpoint());
+        getCircuitBreaker(client.getKey()).onIgnored();
+        destroy(client);
+    }
+
+    private void destroy(PooledThriftClient<T> client) {
+        try {
+            pool.invalidateObject(client.getKey(), client);
+        } catch (final Exception e) {
+            logger.warn("Error invalidating " + client, e);
+        }
+    }
+
+    /**
+     * @return the state of the circuit breaker for an endpoint (host:port) of the service
+     */
+    public CircuitBreaker.State getCircuitState(ServiceKey service, String endpoint) {
+        return getCircuitBreaker(new EndpointKey(service, endpoint)).getState();
+    }
+
+    /**
+     * @return where this pool reports its measurements
+     */
+    public ThriftClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        if (ownsEndpointCache) {
+            try {
+                endpointCache.close();
+            } catch (final IOException e) {
+                logger.warn("Error closing endpoint cache", e);
+            }
+        }
+    }
+
+    private CircuitBreaker getCircuitBreaker(EndpointKey key) {
+        CircuitBreaker breaker = circuitBreakers.get(key);
+        if (breaker == null) {
+            final CircuitBreaker created = new CircuitBreaker(circuitBreakerConfig);
+            breaker = circuitBreakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    private void ejected(EndpointKey key) {
+        logger.warn("Circuit breaker opened for " + key + ", closing its idle connections");
+        pool.clear(key);
+    }
+
+    /**
+     * @return whether the exception leaves the connection unusable: transport and protocol failures, and the
+     * application exceptions that mean requests and responses are out of step. Other application exceptions, such as
+     * an error in the service's handler, arrive as complete responses on a healthy connection.
+     */
+    static boolean isConnectionError(TException e) {
+        if (e instanceof TTransportException || e instanceof TProtocolException) {
+            return true;
+        }
+        if (e instanceof TApplicationException) {
+            switch (((TApplicationException) e).getType()) {
+                case TApplicationException.BAD_SEQUENCE_ID:
+                case TApplicationException.MISSING_RESULT:
+                case TApplicationException.PROTOCOL_ERROR:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+
+/**
+ * Configuration for a {@link ThriftClientPool}. Sizing, borrow wait time and idle eviction are inherited from
+ * commons-pool and apply per endpoint; the defaults here validate connections on borrow and evict connections that
+ * have been idle for a minute.
+ *
+ * The evictor also health checks every idle connection on each run, pinging those that have not been seen working
+ * within the {@link #getHealthCheckIntervalMillis() health check interval} and closing the ones that fail, so dead
+ * connections are found in the background rather than by a caller's request. When a minimum number of idle
+ * connections is configured, the evictor replaces the closed connections.
+ */
+public class ThriftClientPoolConfig extends GenericKeyedObjectPoolConfig {
+    public static final int DEFAULT_MAX_TOTAL_PER_ENDPOINT = 16;
+    public static final int DEFAULT_MAX_IDLE_PER_ENDPOINT = 8;
+    public static final int DEFAULT_MIN_IDLE_PER_ENDPOINT = 0;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5000L;
+    public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 30000L;
+    public static final long DEFAULT_MIN_EVICTABLE_IDLE_MILLIS = 60000L;
+    public static final long DEFAULT_ENDPOINT_REFRESH_MILLIS = 30000L;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 30000L;
+    public static final int DEFAULT_HEALTH_CHECK_TIMEOUT_MILLIS = 2000;
+
+    private long endpointRefreshMillis = DEFAULT_ENDPOINT_REFRESH_MILLIS;
+    private LoadBalancingStrategy loadBalancingStrategy = LoadBalancingStrategy.ROUND_ROBIN;
+    private CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+    private ThriftConnectionConfig connectionConfig = new ThriftConnectionConfig();
+    private long healthCheckIntervalMillis = DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS;
+    private int healthCheckTimeoutMillis = DEFAULT_HEALTH_CHECK_TIMEOUT_MILLIS;
+    private ThriftClientMetrics metrics = new InMemoryThriftClientMetrics();
+
+    public ThriftClientPoolConfig() {
+        setMaxTotalPerKey(DEFAULT_MAX_TOTAL_PER_ENDPOINT);
+        setMaxIdlePerKey(DEFAULT_MAX_IDLE_PER_ENDPOINT);
+        setMinIdlePerKey(DEFAULT_MIN_IDLE_PER_ENDPOINT);
+        setMaxTotal(-1);
+        setBlockWhenExhausted(true);
+        setMaxWaitMillis(DEFAULT_MAX_WAIT_MILLIS);
+        setTestOnBorrow(true);
+        setTestWhileIdle(true);
+        setNumTestsPerEvictionRun(-1);
+        setTimeBetweenEvictionRunsMillis(DEFAULT_EVICTION_INTERVAL_MILLIS);
+        setMinEvictableIdleTimeMillis(DEFAULT_MIN_EVICTABLE_IDLE_MILLIS);
+        setJmxEnabled(false);
+    }
+
+    /**
+     * @return how long discovered endpoints are used before they are reloaded in the background
+     */
+    public long getEndpointRefreshMillis() {
+        return endpointRefreshMillis;
+    }
+
+    public void setEndpointRefreshMillis(long endpointRefreshMillis) {
+        this.endpointRefreshMillis = endpointRefreshMillis;
+    }
+
+    public LoadBalancingStrategy getLoadBalancingStrategy() {
+        return loadBalancingStrategy;
+    }
+
+    public void setLoadBalancingStrategy(LoadBalancingStrategy loadBalancingStrategy) {
+        this.loadBalancingStrategy = loadBalancingStrategy;
+    }
+
+    public CircuitBreakerConfig getCircuitBreakerConfig() {
+        return circuitBreakerConfig;
+    }
+
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
+
+    public ThriftConnectionConfig getConnectionConfig() {
+        return connectionConfig;
+    }
+
+    public void setConnectionConfig(ThriftConnectionConfig connectionConfig) {
+        this.connectionConfig = connectionConfig;
+    }
+
+    /**
+     * @return how long a connection may go without a successful call or ping before validating it pings the service,
+     * or a negative number to only check that the socket is open
+     */
+    public long getHealthCheckIntervalMillis() {
+        return healthCheckIntervalMillis;
+    }
+
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    /**
+     * @return how long a health check waits for the ping response before closing the connection
+     */
+    public int getHealthCheckTimeoutMillis() {
+        return healthCheckTimeoutMillis;
+    }
+
+    public void setHealthCheckTimeoutMillis(int healthCheckTimeoutMillis) {
+        this.healthCheckTimeoutMillis = healthCheckTimeoutMillis;
+    }
+
+    /**
+     * @return where the pool reports connect times, pool waits and call latencies; an
+     * {@link InMemoryThriftClientMetrics} unless replaced
+     */
+    public ThriftClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ThriftClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
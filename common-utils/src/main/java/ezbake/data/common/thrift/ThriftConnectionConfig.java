@@ -0,0 +1,127 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+/**
+ * Protocol, transport and socket options for the connections of a {@link ThriftClientPool}. The defaults (binary
+ * protocol over a plain socket) match a standard EzBake Thrift service.
+ */
+public class ThriftConnectionConfig {
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 0;
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384000;
+
+    private ThriftProtocolType protocolType = ThriftProtocolType.BINARY;
+    private ThriftTransportType transportType = ThriftTransportType.SOCKET;
+    private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    public ThriftProtocolType getProtocolType() {
+        return protocolType;
+    }
+
+    public void setProtocolType(ThriftProtocolType protocolType) {
+        this.protocolType = protocolType;
+    }
+
+    public ThriftTransportType getTransportType() {
+        return transportType;
+    }
+
+    public void setTransportType(ThriftTransportType transportType) {
+        this.transportType = transportType;
+    }
+
+    /**
+     * @return how long to wait for a TCP connection to be established
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return how long a read may block waiting for the service, 0 to wait forever
+     */
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * @return the socket's SO_SNDBUF size, 0 for the OS default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * @return the socket's SO_RCVBUF size, 0 for the OS default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * @return the stream buffer size of {@link ThriftTransportType#BUFFERED} and the initial frame buffer size of
+     * {@link ThriftTransportType#FAST_FRAMED}
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return the largest frame a framed transport will accept
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+}
@@ -0,0 +1,43 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TTransport;
+
+/**
+ * Wire protocol used by pooled Thrift clients. Must match the protocol the service was started with.
+ */
+public enum ThriftProtocolType {
+    BINARY(new TBinaryProtocol.Factory()),
+
+    /**
+     * Variable-length encoding; smaller on the wire than {@link #BINARY} for most structs.
+     */
+    COMPACT(new TCompactProtocol.Factory());
+
+    private final TProtocolFactory factory;
+
+    ThriftProtocolType(TProtocolFactory factory) {
+        this.factory = factory;
+    }
+
+    TProtocol getProtocol(TTransport transport) {
+        return factory.getProtocol(transport);
+    }
+}
@@ -0,0 +1,94 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Transport layered over the socket of a pooled Thrift client. Framed transports must match a service using a
+ * framed (e.g. non-blocking) server.
+ */
+public enum ThriftTransportType {
+    /**
+     * Plain {@link TSocket} with Thrift's default 1KB stream buffers.
+     */
+    SOCKET {
+        @Override
+        TTransport wrap(Socket socket, ThriftConnectionConfig config) throws TTransportException {
+            return socketTransport(socket, config);
+        }
+    },
+
+    /**
+     * The socket's streams with buffers of {@link ThriftConnectionConfig#getBufferSize()} bytes, so most calls are
+     * read and written with a single system call.
+     */
+    BUFFERED {
+        @Override
+        TTransport wrap(Socket socket, ThriftConnectionConfig config) throws IOException {
+            return new TIOStreamTransport(new BufferedInputStream(socket.getInputStream(), config.getBufferSize()),
+                    new BufferedOutputStream(socket.getOutputStream(), config.getBufferSize()));
+        }
+    },
+
+    FRAMED {
+        @Override
+        TTransport wrap(Socket socket, ThriftConnectionConfig config) throws TTransportException {
+            return new TFramedTransport(socketTransport(socket, config), config.getMaxFrameSize());
+        }
+    },
+
+    /**
+     * Framed transport that reuses its read and write buffers instead of allocating one per frame.
+     */
+    FAST_FRAMED {
+        @Override
+        TTransport wrap(Socket socket, ThriftConnectionConfig config) throws TTransportException {
+            return new TFastFramedTransport(socketTransport(socket, config), config.getBufferSize(),
+                    config.getMaxFrameSize());
+        }
+    };
+
+    /**
+     * @param socket a connected socket
+     * @return an open transport over the socket
+     */
+    abstract TTransport wrap(Socket socket, ThriftConnectionConfig config) throws TTransportException, IOException;
+
+    /**
+     * Wraps the socket in a {@link TSocket}, which turns Nagle's algorithm off as it is created, then applies the
+     * configured setting again.
+     */
+    private static TSocket socketTransport(Socket socket, ThriftConnectionConfig config) throws TTransportException {
+        final TSocket transport = new TSocket(socket);
+        try {
+            socket.setTcpNoDelay(config.isTcpNoDelay());
+        } catch (final SocketException e) {
+            throw new TTransportException(TTransportException.NOT_OPEN, "Unable to set TCP_NODELAY", e);
+        }
+        return transport;
+    }
+}
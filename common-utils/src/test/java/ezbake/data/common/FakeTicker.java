@@ -0,0 +1,46 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A ticker for tests that only moves when told to.
+ */
+public class FakeTicker extends Ticker {
+    private long nanos;
+
+    public FakeTicker() {
+        this(0);
+    }
+
+    /**
+     * @param startMillis the time to start at, for code that reads the ticker as wall-clock time
+     */
+    public FakeTicker(long startMillis) {
+        this.nanos = TimeUnit.MILLISECONDS.toNanos(startMillis);
+    }
+
+    @Override
+    public synchronized long read() {
+        return nanos;
+    }
+
+    public synchronized void advance(long millis) {
+        nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,228 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+import ezbake.configuration.constants.EzBakePropertyConstants;
+
+public class SharedClientsTest {
+    private final List<FakeClient> created = new CopyOnWriteArrayList<>();
+    private final SharedClients<FakeClient> clients = new SharedClients<>(new Function<Properties, FakeClient>() {
+        @Override
+        public FakeClient apply(Properties config) {
+            final FakeClient client = new FakeClient();
+            created.add(client);
+            return client;
+        }
+    });
+
+    @Test
+    public void testOneClientPerSecurityId() {
+        final FakeClient first = leaseAndClose(config("app1"));
+
+        assertSame(first, leaseAndClose(config("app1")));
+        assertNotSame(first, leaseAndClose(config("app2")));
+        assertEquals(2, created.size());
+        assertEquals(2, clients.size());
+        assertFalse(first.isClosed());
+    }
+
+    @Test
+    public void testDifferentConfigForSameIdReusesClient() {
+        final FakeClient first = leaseAndClose(config("app1"));
+        final Properties changed = config("app1");
+        changed.setProperty("other.setting", "changed");
+
+        assertSame(first, leaseAndClose(changed));
+        assertEquals(1, created.size());
+    }
+
+    @Test
+    public void testCloseReplacesClient() {
+        final FakeClient first = leaseAndClose(config("app1"));
+        clients.close(config("app1"));
+
+        assertTrue(first.isClosed());
+        assertEquals(0, clients.size());
+        final FakeClient second = leaseAndClose(config("app1"));
+        assertNotSame(first, second);
+        assertFalse(second.isClosed());
+    }
+
+    @Test
+    public void testCloseWaitsForOpenLeases() {
+        final SharedClients.Lease<FakeClient> lease = clients.acquire(config("app1"));
+        clients.close();
+
+        assertFalse(lease.getClient().isClosed());
+        final FakeClient replacement = leaseAndClose(config("app1"));
+        assertNotSame(lease.getClient(), replacement);
+
+        lease.close();
+        assertTrue(lease.getClient().isClosed());
+        lease.close();
+        assertEquals(1, lease.getClient().getCloseCount());
+        assertFalse(replacement.isClosed());
+    }
+
+    @Test
+    public void testShutdownHookAddedOnFirstClient() {
+        clients.registerShutdownHook();
+        try {
+            assertFalse(clients.isShutdownHookAdded());
+            leaseAndClose(config("app1"));
+            assertTrue(clients.isShutdownHookAdded());
+        } finally {
+            clients.removeShutdownHook();
+        }
+        assertFalse(clients.isShutdownHookAdded());
+
+        leaseAndClose(config("app2"));
+        assertFalse(clients.isShutdownHookAdded());
+        clients.registerShutdownHook();
+        try {
+            assertTrue(clients.isShutdownHookAdded());
+        } finally {
+            clients.removeShutdownHook();
+        }
+    }
+
+    @Test
+    public void testFactoryFailureHoldsNothing() {
+        final SharedClients<FakeClient> failing = new SharedClients<>(new Function<Properties, FakeClient>() {
+            @Override
+            public FakeClient apply(Properties config) {
+                throw new IllegalStateException("no security service");
+            }
+        });
+        try {
+            failing.acquire(config("app1"));
+            fail("expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            assertEquals("no security service", e.getMessage());
+        }
+        assertEquals(0, failing.size());
+    }
+
+    @Test
+    public void testLeasedClientNeverClosedByConcurrentClose() throws Exception {
+        final int threads = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(threads);
+        try {
+            final List<Future<Integer>> users = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                users.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        started.countDown();
+                        int closedWhileLeased = 0;
+                        while (!stop.get()) {
+                            try (SharedClients.Lease<FakeClient> lease = clients.acquire(config("app1"))) {
+                                if (lease.getClient().isClosed()) {
+                                    closedWhileLeased++;
+                                }
+                                Thread.yield();
+                                if (lease.getClient().isClosed()) {
+                                    closedWhileLeased++;
+                                }
+                            }
+                        }
+                        return closedWhileLeased;
+                    }
+                }));
+            }
+            final Future<?> closer = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    while (!stop.get()) {
+                        clients.close(config("app1"));
+                        Thread.yield();
+                    }
+                }
+            });
+
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            stop.set(true);
+            closer.get(10, TimeUnit.SECONDS);
+            for (final Future<Integer> user : users) {
+                assertEquals(0, user.get(10, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+
+        clients.close();
+        assertTrue(created.size() > 1);
+        for (final FakeClient client : created) {
+            assertEquals(1, client.getCloseCount());
+        }
+    }
+
+    private FakeClient leaseAndClose(Properties config) {
+        try (SharedClients.Lease<FakeClient> lease = clients.acquire(config)) {
+            return lease.getClient();
+        }
+    }
+
+    private static Properties config(String securityId) {
+        final Properties config = new Properties();
+        config.setProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID, securityId);
+        return config;
+    }
+
+    private static final class FakeClient implements Closeable {
+        private int closeCount;
+
+        synchronized boolean isClosed() {
+            return closeCount > 0;
+        }
+
+        synchronized int getCloseCount() {
+            return closeCount;
+        }
+
+        @Override
+        public synchronized void close() {
+            closeCount++;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.thrift.TException;
+import org.junit.Test;
+
+import ezbake.base.thrift.EzBakeBaseService;
+import ezbake.data.common.thrift.ThriftCallback;
+
+public class ThriftClientTest {
+
+    @Test
+    public void testExecuteWithoutAppName() {
+        final String appName = System.getProperty("appname");
+        System.clearProperty("appname");
+        try {
+            ThriftClient.execute(new ThriftCallback<EzBakeBaseService.Client, Boolean>() {
+                @Override
+                public Boolean call(EzBakeBaseService.Client client) throws TException {
+                    return client.ping();
+                }
+            });
+            fail("Expected the call to fail");
+        } catch (final TException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("appname"));
+        } finally {
+            if (appName != null) {
+                System.setProperty("appname", appName);
+            }
+        }
+    }
+}
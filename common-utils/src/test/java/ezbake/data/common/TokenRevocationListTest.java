@@ -0,0 +1,163 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.ValidityCaveats;
+
+public class TokenRevocationListTest {
+
+    @Test
+    public void testNothingRevokedBeforeRefresh() {
+        final TokenRevocationList list = new TokenRevocationList(new MemorySource("sig"));
+
+        assertFalse(list.isRevoked(token("sig")));
+        assertEquals(0, list.getLastRefreshMillis());
+    }
+
+    @Test
+    public void testRevokedTokens() throws Exception {
+        final TokenRevocationList list = new TokenRevocationList(new MemorySource("revoked-1", "revoked-2"));
+        list.refresh();
+
+        assertTrue(list.isRevoked(token("revoked-1")));
+        assertTrue(list.isRevoked(token("revoked-2")));
+        assertFalse(list.isRevoked(token("valid")));
+        assertFalse(list.isRevoked(token(null)));
+        assertFalse(list.isRevoked(new EzSecurityToken()));
+        assertEquals(2, list.size());
+        assertEquals(2, list.getRejectionCount());
+    }
+
+    @Test
+    public void testNoFalseRevocations() throws Exception {
+        final MemorySource source = new MemorySource();
+        for (int i = 0; i < 1000; i++) {
+            source.signatures.add("revoked-" + i);
+        }
+        final TokenRevocationList list = new TokenRevocationList(source, 0.1);
+        list.refresh();
+
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(list.isRevoked("valid-" + i));
+        }
+        assertTrue(list.getFalsePositiveCount() > 0);
+        assertEquals(0, list.getRejectionCount());
+    }
+
+    @Test
+    public void testRefreshReplacesRevocations() throws Exception {
+        final MemorySource source = new MemorySource("sig-1");
+        final TokenRevocationList list = new TokenRevocationList(source);
+        list.refresh();
+        source.signatures.clear();
+        source.signatures.add("sig-2");
+        list.refresh();
+
+        assertFalse(list.isRevoked("sig-1"));
+        assertTrue(list.isRevoked("sig-2"));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsRevocations() throws Exception {
+        final MemorySource source = new MemorySource("sig");
+        final TokenRevocationList list = new TokenRevocationList(source);
+        list.refresh();
+        source.failure = new IOException("unavailable");
+
+        try {
+            list.refresh();
+            fail("Refresh succeeded");
+        } catch (final IOException e) {
+            // expected
+        }
+        assertTrue(list.isRevoked("sig"));
+    }
+
+    @Test
+    public void testPeriodicRefresh() throws Exception {
+        final MemorySource source = new MemorySource("sig-1");
+        try (TokenRevocationList list = new TokenRevocationList(source)) {
+            list.startRefreshing(10);
+            assertTrue(list.isRevoked("sig-1"));
+
+            synchronized (source) {
+                source.signatures.add("sig-2");
+            }
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!list.isRevoked("sig-2") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(list.isRevoked("sig-2"));
+        }
+    }
+
+    @Test
+    public void testFileSource() throws Exception {
+        final File file = File.createTempFile("revoked", ".txt");
+        try {
+            Files.write("# revoked tokens\nsig-1\n\n  sig-2  \n", file, Charsets.UTF_8);
+            final TokenRevocationList list = new TokenRevocationList(new FileTokenRevocationSource(file));
+            list.refresh();
+
+            assertEquals(2, list.size());
+            assertTrue(list.isRevoked("sig-1"));
+            assertTrue(list.isRevoked("sig-2"));
+            assertFalse(list.isRevoked("# revoked tokens"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static EzSecurityToken token(String signature) {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setValidity(new ValidityCaveats().setIssuedTo("app").setSignature(signature));
+        return token;
+    }
+
+    private static class MemorySource implements TokenRevocationSource {
+        final Set<String> signatures = new HashSet<>();
+        volatile IOException failure;
+
+        MemorySource(String... signatures) {
+            for (final String signature : signatures) {
+                this.signatures.add(signature);
+            }
+        }
+
+        @Override
+        public synchronized Set<String> load() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            return new HashSet<>(signatures);
+        }
+    }
+}
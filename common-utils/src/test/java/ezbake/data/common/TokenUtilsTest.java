@@ -0,0 +1,214 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.thrift.TException;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityPrincipal;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.TokenType;
+import ezbake.base.thrift.ValidityCaveats;
+import ezbake.configuration.constants.EzBakePropertyConstants;
+import ezbake.security.client.EzbakeSecurityClient;
+
+public class TokenUtilsTest {
+
+    @Test
+    public void testGetAuthsSortedAndShared() {
+        final String auths = TokenUtils.getAuths(createToken(TokenType.USER, Sets.newHashSet("USA", "TS", "S")));
+
+        assertEquals("S,TS,USA", auths);
+        assertSame(auths, TokenUtils.getAuths(createToken(TokenType.USER, new TreeSet<>(Sets.newHashSet("S", "TS",
+                "USA")))));
+    }
+
+    @Test
+    public void testGetAuthsReflectsChangedSet() {
+        final Set<String> formalAuths = new LinkedHashSet<>(Sets.newHashSet("U", "FOUO"));
+        final EzSecurityToken token = createToken(TokenType.USER, formalAuths);
+        assertEquals("FOUO,U", TokenUtils.getAuths(token));
+
+        formalAuths.add("C");
+        assertEquals("C,FOUO,U", TokenUtils.getAuths(token));
+    }
+
+    @Test
+    public void testGetAuthsWithoutAuths() {
+        final EzSecurityToken token = createToken(TokenType.USER, null);
+        token.setAuthorizations(null);
+
+        assertEquals("N/A - No auths set", TokenUtils.getAuths(token));
+    }
+
+    @Test
+    public void testAppendAuths() throws Exception {
+        final EzSecurityToken token = createToken(TokenType.USER, Sets.newHashSet("TS", "USA"));
+
+        assertEquals("auths=TS,USA", TokenUtils.appendAuths(token, new StringBuilder("auths=")).toString());
+        assertEquals("TS,USA", TokenUtils.appendAuths(token, new StringWriter()).toString());
+    }
+
+    @Test
+    public void testAppendUserDN() throws Exception {
+        assertEquals("user=principal", TokenUtils.appendUserDN(createToken(TokenType.USER, Sets.newHashSet("U")),
+                new StringBuilder("user=")).toString());
+        assertEquals("N/A - Service Request", TokenUtils.appendUserDN(createToken(TokenType.APP,
+                Sets.newHashSet("U")), new StringWriter()).toString());
+    }
+
+    @Test
+    public void testRevokedTokenRejected() throws Exception {
+        final TokenRevocationList revocations = new TokenRevocationList(new TokenRevocationSource() {
+            @Override
+            public Set<String> load() {
+                return Collections.singleton("signature");
+            }
+        });
+        revocations.refresh();
+        final EzSecurityToken token = createToken(TokenType.USER, Sets.newHashSet("U"));
+        final Properties config = new Properties();
+
+        TokenUtils.setRevocationList(revocations);
+        try {
+            try {
+                TokenUtils.validateSecurityToken(token, config);
+                fail("Revoked token validated");
+            } catch (final TException e) {
+                assertTrue(e.getMessage().contains("revoked"));
+            }
+            assertTrue(TokenUtils.validateAll(Collections.singleton(token), config).containsKey(token));
+            try {
+                Futures.getUnchecked(TokenUtils.validateAsync(token, config));
+                fail("Revoked token validated");
+            } catch (final RuntimeException e) {
+                assertTrue(e.getCause() instanceof TException);
+            }
+        } finally {
+            TokenUtils.setRevocationList(null);
+        }
+    }
+
+    @Test
+    public void testValidateAllValidatesEachDistinctTokenOnce() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final EzSecurityToken token = createToken(TokenType.USER, Sets.newHashSet("U"));
+        token.getValidity().setSignature("distinct-1");
+        final EzSecurityToken copy = token.deepCopy();
+        final EzSecurityToken other = createToken(TokenType.USER, Sets.newHashSet("U"));
+        other.getValidity().setSignature("distinct-2");
+
+        final SecurityClientHolder replaced = TokenUtils.setSecurityClients(failingClients(attempts));
+        try {
+            final Map<EzSecurityToken, TException> failures = TokenUtils.validateAll(Arrays.asList(token, copy, other,
+                    token), config("app"));
+
+            assertEquals(2, attempts.get());
+            assertEquals(3, failures.size());
+            assertTrue(failures.containsKey(token));
+            assertTrue(failures.containsKey(copy));
+            assertTrue(failures.containsKey(other));
+            assertSame(failures.get(token), failures.get(copy));
+            assertNotSame(failures.get(token), failures.get(other));
+            assertTrue(failures.get(token).getCause() instanceof IllegalStateException);
+        } finally {
+            TokenUtils.setSecurityClients(replaced).close();
+        }
+    }
+
+    @Test
+    public void testValidateAllWithoutTokens() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final SecurityClientHolder replaced = TokenUtils.setSecurityClients(failingClients(attempts));
+        try {
+            assertTrue(TokenUtils.validateAll(Collections.<EzSecurityToken>emptyList(), config("app")).isEmpty());
+            assertEquals(0, attempts.get());
+        } finally {
+            TokenUtils.setSecurityClients(replaced).close();
+        }
+    }
+
+    @Test
+    public void testValidateAsyncFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final EzSecurityToken token = createToken(TokenType.USER, Sets.newHashSet("U"));
+        token.getValidity().setSignature("async-1");
+
+        final SecurityClientHolder replaced = TokenUtils.setSecurityClients(failingClients(attempts));
+        try {
+            TokenUtils.validateAsync(token, config("app")).get(10, TimeUnit.SECONDS);
+            fail("Token validated without a security client");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TException);
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+            assertEquals(1, attempts.get());
+        } finally {
+            TokenUtils.setSecurityClients(replaced).close();
+        }
+    }
+
+    private static SecurityClientHolder failingClients(final AtomicInteger attempts) {
+        return new SecurityClientHolder(new Function<Properties, EzbakeSecurityClient>() {
+            @Override
+            public EzbakeSecurityClient apply(Properties config) {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("Security service unavailable");
+            }
+        });
+    }
+
+    private static Properties config(String securityId) {
+        final Properties config = new Properties();
+        config.setProperty(EzBakePropertyConstants.EZBAKE_SECURITY_ID, securityId);
+        return config;
+    }
+
+    private static EzSecurityToken createToken(TokenType type, Set<String> formalAuths) {
+        final EzSecurityToken token = new EzSecurityToken();
+        final ValidityCaveats validity = new ValidityCaveats();
+        validity.setIssuedTo("app");
+        validity.setSignature("signature");
+        token.setValidity(validity);
+        token.setType(type);
+        final Authorizations authorizations = new Authorizations();
+        authorizations.setFormalAuthorizations(formalAuths);
+        token.setAuthorizations(authorizations);
+        token.setTokenPrincipal(new EzSecurityPrincipal("principal", validity));
+        return token;
+    }
+}
@@ -0,0 +1,124 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.TokenType;
+import ezbake.base.thrift.ValidityCaveats;
+
+public class TokenValidationCacheTest {
+    private static final long NOW = 1400000000000L;
+    private static final String APP = "app-security-id";
+
+    private FakeTicker clock;
+    private TokenValidationCache cache;
+
+    @Before
+    public void setUp() {
+        clock = new FakeTicker(NOW);
+        cache = new TokenValidationCache(100, clock);
+    }
+
+    @Test
+    public void testValidatedTokenHit() {
+        cache.validated(token("sig", NOW + 60000), APP, 1000);
+
+        assertTrue(cache.isValidated(token("sig", NOW + 60000), APP));
+        final CacheStats stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(0, stats.missCount());
+        assertEquals(1, stats.loadSuccessCount());
+    }
+
+    @Test
+    public void testOtherApplicationMisses() {
+        cache.validated(token("sig", NOW + 60000), APP, 1000);
+
+        assertFalse(cache.isValidated(token("sig", NOW + 60000), "other-app"));
+    }
+
+    @Test
+    public void testAlteredTokenWithSameSignatureMisses() {
+        cache.validated(token("sig", NOW + 60000), APP, 1000);
+
+        final EzSecurityToken altered = token("sig", NOW + 60000);
+        altered.getValidity().setIssuedFor("someone-else");
+        assertFalse(cache.isValidated(altered, APP));
+    }
+
+    @Test
+    public void testCachedCopyNotAffectedByChangesToToken() {
+        final EzSecurityToken token = token("sig", NOW + 60000);
+        cache.validated(token, APP, 1000);
+        token.getValidity().setNotAfter(NOW + 120000);
+
+        assertFalse(cache.isValidated(token, APP));
+        assertTrue(cache.isValidated(token("sig", NOW + 60000), APP));
+    }
+
+    @Test
+    public void testTokenExpiresAtNotAfter() {
+        cache.validated(token("sig", NOW + 60000), APP, 1000);
+        clock.advance(59999);
+        assertTrue(cache.isValidated(token("sig", NOW + 60000), APP));
+
+        clock.advance(1);
+        assertFalse(cache.isValidated(token("sig", NOW + 60000), APP));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testExpiredTokenNotCached() {
+        cache.validated(token("sig", NOW - 1), APP, 1000);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testUnsignedTokenNotCached() {
+        cache.validated(token(null, NOW + 60000), APP, 1000);
+
+        assertEquals(0, cache.size());
+        assertFalse(cache.isValidated(token(null, NOW + 60000), APP));
+    }
+
+    @Test
+    public void testSizeBounded() {
+        for (int i = 0; i < 500; i++) {
+            cache.validated(token("sig" + i, NOW + 60000), APP, 1000);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.stats().evictionCount() >= 400);
+    }
+
+    private static EzSecurityToken token(String signature, long notAfter) {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setType(TokenType.USER);
+        token.setValidity(new ValidityCaveats().setIssuer("EzSecurity").setIssuedTo(APP).setIssuedFor(APP)
+                .setNotAfter(notAfter).setSignature(signature));
+        return token;
+    }
+}
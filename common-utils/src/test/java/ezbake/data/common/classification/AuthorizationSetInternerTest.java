@@ -0,0 +1,113 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityToken;
+
+public class AuthorizationSetInternerTest {
+
+    @Test
+    public void testEqualSetsShareInstance() {
+        final AuthorizationSetInterner interner = new AuthorizationSetInterner();
+        final AuthorizationSet first = interner.intern(Sets.newHashSet("USA", "TS", "S"));
+
+        assertSame(first, interner.intern(new TreeSet<>(Sets.newHashSet("S", "TS", "USA"))));
+        assertSame(first, interner.intern("TS, USA,S"));
+        assertEquals("S,TS,USA", first.toString());
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void testInternedSetNotAffectedByChangesToSet() {
+        final AuthorizationSetInterner interner = new AuthorizationSetInterner();
+        final Set<String> auths = Sets.newHashSet("U", "FOUO");
+        final AuthorizationSet interned = interner.intern(auths);
+        auths.add("C");
+
+        assertEquals("FOUO,U", interned.toString());
+        assertEquals("C,FOUO,U", interner.intern(auths).toString());
+    }
+
+    @Test
+    public void testConversions() {
+        final AuthorizationSet set = new AuthorizationSetInterner().intern(Sets.newHashSet("USA", "S"));
+
+        final List<ByteBuffer> bytes = set.getBytes();
+        assertEquals(2, bytes.size());
+        assertEquals(ByteBuffer.wrap("S".getBytes(StandardCharsets.UTF_8)), bytes.get(0));
+        assertEquals(ByteBuffer.wrap("USA".getBytes(StandardCharsets.UTF_8)), bytes.get(1));
+
+        assertSame(set.getAuthorizations(), set.getAuthorizations());
+        assertTrue(set.getAuthorizations().contains("USA"));
+        assertEquals(2, set.getAuthorizations().size());
+    }
+
+    @Test
+    public void testEmpty() {
+        final AuthorizationSetInterner interner = new AuthorizationSetInterner();
+
+        assertSame(AuthorizationSet.EMPTY, interner.intern((Set<String>) null));
+        assertSame(AuthorizationSet.EMPTY, interner.intern(" "));
+        assertSame(org.apache.accumulo.core.security.Authorizations.EMPTY,
+                AuthorizationSet.EMPTY.getAuthorizations());
+        assertEquals("", AuthorizationSet.EMPTY.toString());
+    }
+
+    @Test
+    public void testSizeBounded() {
+        final AuthorizationSetInterner interner = new AuthorizationSetInterner(10);
+        for (int i = 0; i < 100; i++) {
+            interner.intern(Sets.newHashSet("A" + i));
+        }
+
+        assertTrue(interner.size() <= 10);
+        assertEquals(100, interner.stats().missCount());
+    }
+
+    @Test
+    public void testClassificationUtilsShareSets() throws Exception {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setAuthorizations(new Authorizations());
+        token.getAuthorizations().setFormalAuthorizations(Sets.newHashSet("U", "FOUO"));
+
+        final AuthorizationSet formal = ClassificationUtils.getUserAuthorizationSet(token, null);
+        assertSame(formal, ClassificationUtils.getUserAuthorizationSet(token,
+                ClassificationUtils.USER_FORMAL_AUTHS));
+        assertSame(formal.getAuthorizations(), ClassificationUtils.getAuthsFromString("U,FOUO"));
+        assertEquals("FOUO,U", ClassificationUtils.extractUserAuths(token));
+        assertEquals("", ClassificationUtils.extractUserExternalCommunityAuths(token));
+
+        assertTrue(ClassificationUtils.confirmAuthsForAccumuloClassification(token, "U&FOUO",
+                ClassificationUtils.USER_FORMAL_AUTHS));
+        assertFalse(ClassificationUtils.confirmAuthsForAccumuloClassification(token, "U&FOUO",
+                ClassificationUtils.USER_EXTERNAL_COMMUNITY_AUTHS));
+    }
+}
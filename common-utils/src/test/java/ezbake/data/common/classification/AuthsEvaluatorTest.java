@@ -0,0 +1,116 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityToken;
+
+public class AuthsEvaluatorTest {
+
+    @Test
+    public void testEvaluatorSharedByEqualAuths() {
+        final AuthsEvaluator evaluator = ClassificationUtils.evaluatorFor(token(Sets.newHashSet("S", "USA")), null);
+
+        assertSame(evaluator, ClassificationUtils.evaluatorFor(token(Sets.newHashSet("USA", "S")),
+                ClassificationUtils.USER_FORMAL_AUTHS));
+        assertNotSame(evaluator, ClassificationUtils.evaluatorFor(token(Sets.newHashSet("S")), null));
+        assertEquals("S,USA", evaluator.getAuths().toString());
+    }
+
+    @Test
+    public void testConfirmClassifications() throws Exception {
+        final AuthsEvaluator evaluator = ClassificationUtils.evaluatorFor(token(Sets.newHashSet("S", "USA")), null);
+
+        assertTrue(evaluator.confirmAccumuloClassification("S&(USA|GBR)"));
+        assertFalse(evaluator.confirmAccumuloClassification("TS&USA"));
+        assertTrue(evaluator.confirmCAPCOClassification("SECRET"));
+        assertFalse(evaluator.confirmCAPCOClassification("TOP SECRET"));
+    }
+
+    @Test
+    public void testExternalCommunityAuths() throws Exception {
+        final EzSecurityToken token = token(Sets.newHashSet("S"));
+        token.getAuthorizations().setExternalCommunityAuthorizations(Sets.newHashSet("COMMUNITY"));
+
+        final AuthsEvaluator evaluator =
+                ClassificationUtils.evaluatorFor(token, ClassificationUtils.USER_EXTERNAL_COMMUNITY_AUTHS);
+        assertTrue(evaluator.confirmAccumuloClassification("COMMUNITY"));
+        assertFalse(evaluator.confirmAccumuloClassification("S"));
+    }
+
+    @Test
+    public void testFilterBatch() throws Exception {
+        final BitSet allowed = ClassificationUtils.confirmAuthsForAccumuloClassifications(
+                token(Sets.newHashSet("S", "USA")), Arrays.asList("S&USA", "TS", "", "S&USA", "S&(GBR|USA)"), null);
+
+        final BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2, 5);
+        assertEquals(expected, allowed);
+    }
+
+    @Test
+    public void testFilterLargeBatchInParallel() throws Exception {
+        final AuthsEvaluator evaluator = ClassificationUtils.evaluatorFor(token(Sets.newHashSet("S", "USA")), null);
+        final List<String> classifications = new ArrayList<>();
+        for (int i = 0; i < BatchFilter.PARALLEL_THRESHOLD * 3 + 17; i++) {
+            classifications.add(i % 3 == 0 ? "S&USA" : i % 3 == 1 ? "TS&USA" : "S&(USA|C" + (i % 50) + ")");
+        }
+
+        final BitSet allowed = evaluator.filterAccumuloClassifications(classifications);
+        for (int i = 0; i < classifications.size(); i++) {
+            assertEquals(evaluator.confirmAccumuloClassification(classifications.get(i)), allowed.get(i));
+        }
+    }
+
+    @Test
+    public void testFilterCompiled() throws Exception {
+        final VisibilityCompiler compiler = ClassificationUtils.getVisibilityCompiler();
+        final AuthsEvaluator evaluator = ClassificationUtils.evaluatorFor(token(Sets.newHashSet("U")), null);
+
+        final BitSet allowed = evaluator.filter(Arrays.asList(compiler.compile("S"), compiler.compile("U")));
+        assertFalse(allowed.get(0));
+        assertTrue(allowed.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFilterInvalidClassification() throws Exception {
+        ClassificationUtils.evaluatorFor(token(Sets.newHashSet("U")), null)
+                .filterAccumuloClassifications(Arrays.asList("U", "U&(S"));
+    }
+
+    private static EzSecurityToken token(Set<String> formalAuths) {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setAuthorizations(new Authorizations());
+        token.getAuthorizations().setFormalAuthorizations(formalAuths);
+        return token;
+    }
+}
@@ -0,0 +1,88 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ezbake.base.thrift.Visibility;
+import ezbake.classification.ClassificationConversionException;
+
+public class CapcoConversionCacheTest {
+
+    @Test
+    public void testExpressionConvertedOnce() throws Exception {
+        final CapcoConversionCache cache = new CapcoConversionCache();
+
+        assertEquals("U&FOUO", cache.getExpression("UNCLASSIFIED//FOUO"));
+        assertEquals("U&FOUO", cache.getExpression("UNCLASSIFIED//FOUO"));
+        assertEquals(1, cache.expressionStats().loadCount());
+        assertEquals(1, cache.expressionStats().hitCount());
+    }
+
+    @Test
+    public void testVisibilityCopiedOnEachCall() throws Exception {
+        final CapcoConversionCache cache = new CapcoConversionCache();
+
+        final Visibility first = cache.getVisibility("UNCLASSIFIED//FOUO");
+        first.setFormalVisibility("changed");
+        final Visibility second = cache.getVisibility("UNCLASSIFIED//FOUO");
+
+        assertNotSame(first, second);
+        assertEquals("U&FOUO", second.getFormalVisibility());
+        assertEquals(1, cache.visibilityStats().loadCount());
+    }
+
+    @Test
+    public void testInvalidNotCached() throws Exception {
+        final CapcoConversionCache cache = new CapcoConversionCache();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.getExpression("INVALID");
+                fail("Invalid classification converted");
+            } catch (final ClassificationConversionException e) {
+                // expected
+            }
+        }
+
+        assertEquals(2, cache.expressionStats().loadExceptionCount());
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        final CapcoConversionCache cache = new CapcoConversionCache();
+
+        assertEquals(2, cache.preload(Arrays.asList("UNCLASSIFIED//FOUO", "INVALID", "SECRET")));
+        cache.getExpression("SECRET");
+        cache.getVisibility("UNCLASSIFIED//FOUO");
+        assertEquals(1, cache.expressionStats().hitCount());
+        assertEquals(1, cache.visibilityStats().hitCount());
+    }
+
+    @Test
+    public void testSizeBounded() throws Exception {
+        final CapcoConversionCache cache = new CapcoConversionCache(1);
+        for (final String capco : Arrays.asList("UNCLASSIFIED", "CONFIDENTIAL", "SECRET", "TOP SECRET")) {
+            cache.getExpression(capco);
+        }
+
+        assertEquals(3, cache.expressionStats().evictionCount());
+    }
+}
@@ -0,0 +1,66 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Test;
+
+public class ColumnVisibilityCacheTest {
+
+    @Test
+    public void testParsedOnce() {
+        final ColumnVisibilityCache cache = new ColumnVisibilityCache();
+        final ColumnVisibility visibility = cache.get("S&(USA|GBR)");
+
+        assertSame(visibility, cache.get("S&(USA|GBR)"));
+        assertSame(visibility, cache.get("S&(USA|GBR)".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(new ColumnVisibility("S&(USA|GBR)"), visibility);
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCachedExpressionNotAffectedByChangesToArray() {
+        final ColumnVisibilityCache cache = new ColumnVisibilityCache();
+        final byte[] expression = "S&USA".getBytes(StandardCharsets.UTF_8);
+        final ColumnVisibility visibility = cache.get(expression);
+        expression[0] = 'U';
+
+        assertEquals("[S&USA]", visibility.toString());
+        assertSame(visibility, cache.get("S&USA"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        new ColumnVisibilityCache().get("S&(USA");
+    }
+
+    @Test
+    public void testWeightBounded() {
+        final ColumnVisibilityCache cache = new ColumnVisibilityCache(10000);
+        for (int i = 0; i < 1000; i++) {
+            cache.get("S&USA&C" + i);
+        }
+
+        assertTrue(cache.size() < 100);
+        assertTrue(cache.stats().evictionCount() > 900);
+    }
+}
@@ -14,12 +14,16 @@
 
 package ezbake.data.common.classification;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.accumulo.core.security.VisibilityParseException;
@@ -158,4 +162,160 @@ public class TestVisibilityUtils {
             fail(e.getMessage());
         }
     }
+
+    @Test
+    public void generateClassificationCached() throws Exception {
+        final List first = VisibilityUtils.generateVisibilityList("S//REL TO USA,GBR", true);
+
+        assertSame(first, VisibilityUtils.generateVisibilityList("S//REL TO USA,GBR", true));
+        assertTrue(VisibilityUtils.getVisibilityListStats(true).hitCount() > 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void generateClassificationImmutable() throws Exception {
+        VisibilityUtils.generateVisibilityList("S&USA", false).clear();
+    }
+
+    @Test
+    public void generateExpressionNested() throws Exception {
+        assertEquals(Arrays.asList(Arrays.asList("A", "C"), Arrays.asList("A", "D"), Arrays.asList("B", "C"),
+                Arrays.asList("B", "D")), VisibilityUtils.generateVisibilityList("(A|B)&(C|D)", false));
+        assertEquals(Arrays.asList(Arrays.asList("A", "B", "C"), Arrays.asList("D")),
+                VisibilityUtils.generateVisibilityList("(A&((B&C)|D))|D", false));
+    }
+
+    @Test
+    public void generateExpressionMinimized() throws Exception {
+        assertEquals(Arrays.asList(Arrays.asList("S")), VisibilityUtils.generateVisibilityList("S&S", false));
+        assertEquals(Arrays.asList(Arrays.asList("S", "USA")),
+                VisibilityUtils.generateVisibilityList("(S&USA)|(USA&S)", false));
+        assertEquals(Arrays.asList(Arrays.asList("S")), VisibilityUtils.generateVisibilityList("(S&USA)|S", false));
+        assertTrue(VisibilityUtils.generateVisibilityList("", false).isEmpty());
+    }
+
+    @Test
+    public void generateExpressionMinimizedAtLimit() throws Exception {
+        // 64 * 64 conjunctions, none subsumed
+        final List<List<String>> product = VisibilityUtils.generateVisibilityList(
+                anyOf("A", 64) + "&" + anyOf("B", 64), false);
+        assertEquals(VisibilityUtils.DEFAULT_MAXIMUM_CONJUNCTIONS, product.size());
+        assertEquals(Arrays.asList("A0", "B0"), product.get(0));
+
+        // 64 * 64 conjunctions, all but the 64 single terms subsumed
+        final List<List<String>> squared = VisibilityUtils.generateVisibilityList(
+                anyOf("A", 64) + "&" + anyOf("A", 64), false);
+        assertEquals(64, squared.size());
+        assertEquals(Arrays.asList("A63"), squared.get(63));
+
+        // A0 subsumes the 63 conjunctions that hold it, and comes last
+        final List<List<String>> absorbed = VisibilityUtils.generateVisibilityList(
+                "(" + anyOf("A", 64) + "&" + anyOf("B", 63) + ")|A0", false);
+        assertEquals(64 * 63 - 63 + 1, absorbed.size());
+        assertEquals(Arrays.asList("A1", "B0"), absorbed.get(0));
+        assertEquals(Arrays.asList("A0"), absorbed.get(absorbed.size() - 1));
+    }
+
+    @Test
+    public void generateExpressionTooManyConjunctions() throws Exception {
+        // 3^30 conjunctions
+        final String expression = exponential(30);
+        try {
+            VisibilityUtils.generateVisibilityList(expression, false);
+            fail("Expected VisibilityExpansionException");
+        } catch (VisibilityExpansionException e) {
+            assertEquals(205891132094649L, e.getCount());
+            assertEquals(VisibilityUtils.DEFAULT_MAXIMUM_CONJUNCTIONS, e.getLimit());
+        }
+
+        // Still rejected once cached
+        try {
+            VisibilityUtils.generateVisibilityList(expression, false);
+            fail("Expected VisibilityExpansionException");
+        } catch (VisibilityExpansionException e) {
+            assertEquals(205891132094649L, e.getCount());
+        }
+
+        // 3^8 conjunctions: rejected under the default limit, then expanded under a larger one despite the cache
+        final String smaller = exponential(8);
+        try {
+            VisibilityUtils.generateVisibilityList(smaller, false);
+            fail("Expected VisibilityExpansionException");
+        } catch (VisibilityExpansionException e) {
+            assertEquals(6561, e.getCount());
+        }
+        assertEquals(6561, VisibilityUtils.generateVisibilityList(smaller, false, VisibilityUtils.DEFAULT_MAXIMUM_TERMS,
+                6561).size());
+    }
+
+    @Test
+    public void generateExpressionTooManyTerms() throws Exception {
+        try {
+            VisibilityUtils.generateVisibilityList("A|B|C|D", false, 3, 100);
+            fail("Expected VisibilityExpansionException");
+        } catch (VisibilityExpansionException e) {
+            assertEquals(4, e.getCount());
+            assertEquals(3, e.getLimit());
+        }
+        assertEquals(4, VisibilityUtils.generateVisibilityList("A|B|C|D", false, 4, 100).size());
+    }
+
+    @Test
+    public void enumerateExpression() throws Exception {
+        final List<List<String>> enumerated = new ArrayList<>();
+        for (Iterator<List<String>> conjunctions = VisibilityUtils.enumerateVisibilities("(A|B)&(C|D)&A", false);
+                conjunctions.hasNext();) {
+            enumerated.add(conjunctions.next());
+        }
+        assertEquals(Arrays.asList(Arrays.asList("A", "C"), Arrays.asList("A", "D"), Arrays.asList("B", "C", "A"),
+                Arrays.asList("B", "D", "A")), enumerated);
+        assertEquals(Arrays.asList(Arrays.asList("S", "USA"), Arrays.asList("S", "GBR")),
+                toList(VisibilityUtils.enumerateVisibilities("S//REL TO USA,GBR", true)));
+        assertFalse(VisibilityUtils.enumerateVisibilities("", false).hasNext());
+    }
+
+    @Test
+    public void enumerateExpressionStreams() throws Exception {
+        final Iterator<List<String>> conjunctions = VisibilityUtils.enumerateVisibilities(exponential(30), false);
+        List<String> last = null;
+        for (int i = 0; i < 100000; i++) {
+            last = conjunctions.next();
+        }
+        assertEquals(30, last.size());
+        assertTrue(conjunctions.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void enumerateInvalidExpression() throws Exception {
+        VisibilityUtils.enumerateVisibilities("A&(B", false);
+    }
+
+    private static String anyOf(String prefix, int count) {
+        final StringBuilder expression = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                expression.append('|');
+            }
+            expression.append(prefix).append(i);
+        }
+        return expression.append(')').toString();
+    }
+
+    private static String exponential(int factors) {
+        final StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < factors; i++) {
+            if (i > 0) {
+                expression.append('&');
+            }
+            expression.append("(A").append(i).append("|B").append(i).append("|C").append(i).append(')');
+        }
+        return expression.toString();
+    }
+
+    private static List<List<String>> toList(Iterator<List<String>> conjunctions) {
+        final List<List<String>> list = new ArrayList<>();
+        while (conjunctions.hasNext()) {
+            list.add(conjunctions.next());
+        }
+        return list;
+    }
 }
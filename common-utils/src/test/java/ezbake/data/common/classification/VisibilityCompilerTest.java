@@ -0,0 +1,127 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.VisibilityEvaluator;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class VisibilityCompilerTest {
+
+    @Test
+    public void testCompiledToClauses() {
+        final VisibilityCompiler compiler = new VisibilityCompiler();
+
+        assertEquals(3, compiler.compile("S&(USA|GBR|AUS)").getClauseCount());
+        assertEquals(1, compiler.compile("S&(S|USA)").getClauseCount());
+        assertEquals(1, compiler.compile("").getClauseCount());
+        assertSame(compiler.compile("S&USA"), compiler.compile("S&USA"));
+    }
+
+    @Test
+    public void testEvaluate() throws Exception {
+        final VisibilityCompiler compiler = new VisibilityCompiler();
+        final AuthsEvaluator user = evaluator(compiler, "S", "USA");
+
+        assertTrue(user.evaluate(compiler.compile("S&(USA|GBR)")));
+        assertTrue(user.evaluate(compiler.compile("")));
+        assertTrue(user.evaluate(compiler.compile("\"USA\"")));
+        assertFalse(user.evaluate(compiler.compile("TS|(S&GBR)")));
+        assertFalse(evaluator(compiler).evaluate(compiler.compile("S")));
+    }
+
+    @Test
+    public void testTermsAddedAfterUserEncoded() throws Exception {
+        final VisibilityCompiler compiler = new VisibilityCompiler();
+        final AuthsEvaluator user = evaluator(compiler, "NEW");
+
+        compiler.compile("OTHER|S");
+        assertTrue(user.evaluate(compiler.compile("NEW&(NEW|ANOTHER)")));
+    }
+
+    @Test
+    public void testFallbackWhenTermsExceedWidth() throws Exception {
+        final VisibilityCompiler compiler = new VisibilityCompiler(2, 64, 100);
+        final AuthsEvaluator user = evaluator(compiler, "A", "B", "C");
+
+        final CompiledVisibility visibility = compiler.compile("A&C");
+        assertFalse(visibility.isCompiled());
+        assertTrue(user.evaluate(visibility));
+        assertFalse(user.evaluate(compiler.compile("A&D")));
+    }
+
+    @Test
+    public void testFallbackWhenTooManyClauses() throws Exception {
+        final VisibilityCompiler compiler = new VisibilityCompiler(4096, 4, 100);
+        final AuthsEvaluator user = evaluator(compiler, "A", "D", "F");
+
+        final CompiledVisibility visibility = compiler.compile("(A|B)&(C|D)&(E|F)");
+        assertFalse(visibility.isCompiled());
+        assertTrue(user.evaluate(visibility));
+        assertTrue(compiler.compile("(A|B)&(C|D)").isCompiled());
+    }
+
+    @Test
+    public void testMatchesAccumuloEvaluator() throws Exception {
+        final Random random = new Random(42);
+        final VisibilityCompiler compiler = new VisibilityCompiler(100, 16, 1000);
+        for (int i = 0; i < 2000; i++) {
+            final String expression = randomExpression(random, 3);
+            final Set<String> auths = new HashSet<>();
+            for (int t = 0; t < 8; t++) {
+                if (random.nextBoolean()) {
+                    auths.add("T" + t);
+                }
+            }
+            final AuthorizationSet set = new AuthorizationSetInterner().intern(auths);
+
+            final boolean expected =
+                    new VisibilityEvaluator(set.getAuthorizations()).evaluate(new ColumnVisibility(expression));
+            assertEquals(expression + " " + auths, expected,
+                    new AuthsEvaluator(set, compiler).evaluate(compiler.compile(expression)));
+        }
+    }
+
+    private static String randomExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return "T" + random.nextInt(8);
+        }
+        final String operator = random.nextBoolean() ? "&" : "|";
+        final StringBuilder expression = new StringBuilder("(");
+        final int children = 2 + random.nextInt(3);
+        for (int i = 0; i < children; i++) {
+            if (i > 0) {
+                expression.append(operator);
+            }
+            expression.append(randomExpression(random, depth - 1));
+        }
+        return expression.append(')').toString();
+    }
+
+    private static AuthsEvaluator evaluator(VisibilityCompiler compiler, String... auths) {
+        return new AuthsEvaluator(new AuthorizationSetInterner().intern(Sets.newHashSet(auths)), compiler);
+    }
+}
@@ -0,0 +1,185 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityToken;
+
+public class VisibilityFilteringIteratorTest {
+    private static final VisibilityExtractor<String[]> EXTRACTOR = new VisibilityExtractor<String[]>() {
+        @Override
+        public String getClassification(String[] record) {
+            return record[1];
+        }
+    };
+
+    @Test
+    public void testFiltersLazily() {
+        final CountingIterator source = new CountingIterator(Arrays.asList(record("a", "S&USA"), record("b", "TS"),
+                record("c", "S"), record("d", "TS"), record("e", "")));
+        final Iterator<String[]> readable = ClassificationUtils.filterReadable(source, token("S", "USA"), null,
+                EXTRACTOR);
+
+        assertEquals(0, source.pulled);
+        assertEquals("a", readable.next()[0]);
+        assertEquals(1, source.pulled);
+        assertEquals("c", readable.next()[0]);
+        assertEquals(3, source.pulled);
+        assertEquals("e", readable.next()[0]);
+        assertFalse(readable.hasNext());
+    }
+
+    @Test
+    public void testDropsUnclassifiedAndInvalidRecords() {
+        final VisibilityFilteringIterator<String[]> readable = ClassificationUtils.filterReadable(
+                Arrays.asList(record("a", null), record("b", "S&(USA"), record("c", "S")).iterator(),
+                token("S", "USA"), null, EXTRACTOR);
+
+        assertEquals(Arrays.asList("c"), ids(readable));
+        assertEquals(2, readable.getDroppedCount());
+        assertEquals(1, readable.getInvalidCount());
+    }
+
+    @Test
+    public void testInvalidCountedForEveryRecord() {
+        final VisibilityFilteringIterator<String[]> readable = ClassificationUtils.filterReadable(
+                Arrays.asList(record("a", "S&(USA"), record("b", "S&(USA"), record("c", "TS"), record("d", "S&(USA"),
+                        record("e", "S")).iterator(), token("S", "USA"), null, EXTRACTOR);
+
+        assertEquals(Arrays.asList("e"), ids(readable));
+        assertEquals(4, readable.getDroppedCount());
+        assertEquals(3, readable.getInvalidCount());
+    }
+
+    @Test
+    public void testSplitAfterHasNextKeepsOrder() {
+        final List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(record(Integer.toString(i), "S"));
+        }
+        final VisibilityFilteringIterator<String[]> readable = new VisibilityFilteringIterator<>(records.iterator(),
+                ClassificationUtils.evaluatorFor(token("S"), null), EXTRACTOR, 4);
+
+        assertEquals("0", readable.next()[0]);
+        assertTrue(readable.hasNext());
+        final VisibilityFilteringIterator<String[]> split = readable.trySplit();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids(split));
+        assertEquals(Arrays.asList("5", "6", "7", "8", "9"), ids(readable));
+    }
+
+    @Test
+    public void testSplitsCoverEveryRecordOnce() throws Exception {
+        final List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            records.add(record(Integer.toString(i), i % 2 == 0 ? "S&USA" : "TS&USA"));
+        }
+        final VisibilityFilteringIterator<String[]> readable = new VisibilityFilteringIterator<>(records.iterator(),
+                ClassificationUtils.evaluatorFor(token("S", "USA"), null), EXTRACTOR, 1000);
+
+        final List<VisibilityFilteringIterator<String[]>> splits = new ArrayList<>();
+        for (VisibilityFilteringIterator<String[]> split = readable.trySplit(); split != null;
+                split = readable.trySplit()) {
+            splits.add(split);
+        }
+        assertEquals(10, splits.size());
+        assertNull(readable.trySplit());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (final VisibilityFilteringIterator<String[]> split : splits) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return ids(split);
+                    }
+                }));
+            }
+            int count = 0;
+            for (final Future<List<String>> result : results) {
+                for (final String id : result.get()) {
+                    assertTrue(Integer.parseInt(id) % 2 == 0);
+                    count++;
+                }
+            }
+            assertEquals(5000, count);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> ids(Iterator<String[]> records) {
+        final List<String> ids = new ArrayList<>();
+        while (records.hasNext()) {
+            ids.add(records.next()[0]);
+        }
+        return ids;
+    }
+
+    private static String[] record(String id, String classification) {
+        return new String[] {id, classification};
+    }
+
+    private static EzSecurityToken token(String... formalAuths) {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setAuthorizations(new Authorizations());
+        token.getAuthorizations().setFormalAuthorizations(Sets.newHashSet(formalAuths));
+        return token;
+    }
+
+    private static class CountingIterator implements Iterator<String[]> {
+        private final Iterator<String[]> records;
+        int pulled;
+
+        CountingIterator(List<String[]> records) {
+            this.records = records.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records.hasNext();
+        }
+
+        @Override
+        public String[] next() {
+            pulled++;
+            return records.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class AsyncThriftClientTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    private LoopbackEndpoints endpoints;
+    private ThriftClientPool<EzBakeBaseService.Client> pool;
+    private AsyncThriftClient<EzBakeBaseService.Client> asyncClient;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoints = new LoopbackEndpoints();
+        pool = endpoints.createPool();
+        asyncClient = new AsyncThriftClient<>(pool, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncClient.close();
+        pool.close();
+        endpoints.close();
+    }
+
+    @Test
+    public void testCallsCompleteAsynchronously() throws Exception {
+        final List<ListenableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(asyncClient.submit(SERVICE, new ThriftCallback<EzBakeBaseService.Client, String>() {
+                @Override
+                public String call(EzBakeBaseService.Client client) {
+                    return Thread.currentThread().getName();
+                }
+            }));
+        }
+
+        final List<String> threads = Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+        assertEquals(20, threads.size());
+        for (final String thread : threads) {
+            assertTrue(thread, thread.startsWith("async-thrift-client-"));
+        }
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testFailureCompletesFuture() throws Exception {
+        final ListenableFuture<Void> future =
+                asyncClient.submit(SERVICE, new ThriftCallback<EzBakeBaseService.Client, Void>() {
+                    @Override
+                    public Void call(EzBakeBaseService.Client client) throws TException {
+                        throw new TException("failed");
+                    }
+                });
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the call to fail");
+        } catch (final ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ezbake.data.common.FakeTicker;
+
+public class CircuitBreakerTest {
+    private FakeTicker ticker;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        final CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setSlowCallMillis(100);
+        config.setSlowCallRateThreshold(0.75);
+        config.setOpenMillis(1000);
+
+        ticker = new FakeTicker();
+        breaker = new CircuitBreaker(config, ticker);
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        assertFalse(breaker.onFailure(1));
+        assertFalse(breaker.onSuccess(1));
+        assertFalse(breaker.onSuccess(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.onFailure(1));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() {
+        breaker.onSuccess(500);
+        breaker.onSuccess(500);
+        breaker.onSuccess(1);
+        assertTrue(breaker.onSuccess(500));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOldOutcomesLeaveTheWindow() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(1);
+            breaker.allowRequest();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        ticker.advance(1000);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess(1);
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse(breaker.onSuccess(1));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertFalse(breaker.onFailure(1));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleProbe() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(1);
+        }
+        ticker.advance(999);
+        assertFalse(breaker.allowRequest());
+
+        ticker.advance(1);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        assertTrue(breaker.onFailure(1));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        ticker.advance(1000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.onSuccess(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testIgnoredAttemptReleasesProbe() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(1);
+        }
+        ticker.advance(1000);
+        assertTrue(breaker.allowRequest());
+        breaker.onIgnored();
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testUnreportedProbeReopens() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(1);
+        }
+        ticker.advance(1000);
+        assertTrue(breaker.allowRequest());
+
+        // The probe's client is never handed back
+        ticker.advance(999);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        ticker.advance(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        ticker.advance(1000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.onSuccess(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testMinimumCallsAboveWindowSize() {
+        final CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(2);
+        config.setMinimumCalls(5);
+        final CircuitBreaker small = new CircuitBreaker(config, ticker);
+
+        assertFalse(small.onFailure(1));
+        assertTrue(small.onFailure(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyWindow() {
+        new CircuitBreakerConfig().setWindowSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveMinimumCalls() {
+        new CircuitBreakerConfig().setMinimumCalls(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroFailureRate() {
+        new CircuitBreakerConfig().setFailureRateThreshold(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPercentageAsRate() {
+        new CircuitBreakerConfig().setSlowCallRateThreshold(50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeOpenMillis() {
+        new CircuitBreakerConfig().setOpenMillis(-1);
+    }
+}
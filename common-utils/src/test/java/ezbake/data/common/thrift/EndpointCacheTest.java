@@ -0,0 +1,114 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.thrift.TException;
+import org.junit.Before;
+import org.junit.Test;
+
+import ezbake.data.common.FakeTicker;
+
+public class EndpointCacheTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    private InMemoryEndpointSource source;
+    private FakeTicker ticker;
+    private List<Runnable> pendingRefreshes;
+    private EndpointCache cache;
+
+    @Before
+    public void setUp() {
+        source = new InMemoryEndpointSource();
+        ticker = new FakeTicker();
+        pendingRefreshes = new ArrayList<>();
+        cache = new EndpointCache(source, 1000, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingRefreshes.add(command);
+            }
+        }, ticker);
+    }
+
+    @Test
+    public void testLookupsServedFromMemory() throws Exception {
+        source.endpoints = Arrays.asList("host1:1000", "host2:1000");
+
+        assertEquals(source.endpoints, cache.getEndpoints(SERVICE));
+        assertEquals(source.endpoints, cache.getEndpoints(SERVICE));
+        assertEquals(1, source.lookups);
+    }
+
+    @Test
+    public void testStaleEndpointsServedWhileRefreshing() throws Exception {
+        source.endpoints = Arrays.asList("host1:1000");
+        cache.getEndpoints(SERVICE);
+
+        source.endpoints = Arrays.asList("host2:1000");
+        ticker.advance(2000);
+
+        assertEquals(Arrays.asList("host1:1000"), cache.getEndpoints(SERVICE));
+        assertEquals(1, pendingRefreshes.size());
+
+        pendingRefreshes.remove(0).run();
+        assertEquals(Arrays.asList("host2:1000"), cache.getEndpoints(SERVICE));
+        assertEquals(2, source.lookups);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsEndpoints() throws Exception {
+        source.endpoints = Arrays.asList("host1:1000");
+        cache.getEndpoints(SERVICE);
+
+        source.endpoints = null;
+        ticker.advance(2000);
+        cache.getEndpoints(SERVICE);
+        pendingRefreshes.remove(0).run();
+
+        assertEquals(Arrays.asList("host1:1000"), cache.getEndpoints(SERVICE));
+    }
+
+    @Test
+    public void testNoEndpoints() {
+        try {
+            cache.getEndpoints(SERVICE);
+            fail("Expected a TException");
+        } catch (final TException e) {
+            assertEquals(1, source.lookups);
+        }
+    }
+
+    private static class InMemoryEndpointSource implements EndpointSource {
+        private List<String> endpoints;
+        private int lookups;
+
+        @Override
+        public List<String> getEndpoints(ServiceKey service) {
+            lookups++;
+            return endpoints;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
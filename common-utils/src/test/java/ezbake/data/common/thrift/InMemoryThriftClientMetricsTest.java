@@ -0,0 +1,121 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class InMemoryThriftClientMetricsTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    @Test
+    public void testHistogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        final LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50500, snapshot.getMeanMicros());
+        assertEquals(100000, snapshot.getMaxMicros());
+        // Percentiles are rounded up to the end of their power-of-two bucket, but never past the max
+        assertBetween(50000, 2 * 50000, snapshot.getMedianMicros());
+        assertBetween(90000, 100000, snapshot.getP90Micros());
+        assertBetween(99000, 100000, snapshot.getP99Micros());
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        final LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMeanMicros());
+        assertEquals(0, snapshot.getP99Micros());
+    }
+
+    @Test
+    public void testEndpointAndMethodMetrics() {
+        final InMemoryThriftClientMetrics metrics = new InMemoryThriftClientMetrics();
+        metrics.connected(SERVICE, "host:1", TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.connectFailed(SERVICE, "host:2", TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.borrowed(SERVICE, "host:1", TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.borrowed(SERVICE, "host:1", 0);
+        metrics.released(SERVICE, "host:1");
+        metrics.called(SERVICE, "host:1", "get", TimeUnit.MILLISECONDS.toNanos(5), false);
+        metrics.called(SERVICE, "host:1", "get", TimeUnit.MILLISECONDS.toNanos(7), true);
+        metrics.called(SERVICE, "host:1", null, TimeUnit.MILLISECONDS.toNanos(1), false);
+
+        final EndpointMetricsSnapshot host1 = getEndpoint(metrics.getEndpoints(), "host:1");
+        assertEquals("app/dataset", host1.getService());
+        assertEquals(1, host1.getConnectLatency().getCount());
+        assertEquals(0, host1.getConnectFailures());
+        assertEquals(2, host1.getPoolWait().getCount());
+        assertEquals(1, host1.getInFlight());
+        assertEquals(3, host1.getCallLatency().getCount());
+        assertEquals(1, host1.getErrors());
+
+        final EndpointMetricsSnapshot host2 = getEndpoint(metrics.getEndpoints(), "host:2");
+        assertEquals(1, host2.getConnectFailures());
+        assertEquals(0, host2.getConnectLatency().getCount());
+
+        final List<MethodMetricsSnapshot> methods = metrics.getMethods();
+        assertEquals(1, methods.size());
+        assertEquals("get", methods.get(0).getMethod());
+        assertEquals(2, methods.get(0).getLatency().getCount());
+        assertEquals(1, methods.get(0).getErrors());
+        assertEquals(7000, methods.get(0).getLatency().getMaxMicros());
+    }
+
+    @Test
+    public void testJmxBinding() throws Exception {
+        final InMemoryThriftClientMetrics metrics = new InMemoryThriftClientMetrics();
+        metrics.called(SERVICE, "host:1", "get", TimeUnit.MILLISECONDS.toNanos(5), false);
+
+        final ObjectName name = metrics.registerMBean("test");
+        try {
+            final CompositeData[] methods =
+                    (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Methods");
+            assertEquals(1, methods.length);
+            assertEquals("get", methods[0].get("method"));
+            assertEquals(1L, ((CompositeData) methods[0].get("latency")).get("count"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private static EndpointMetricsSnapshot getEndpoint(List<EndpointMetricsSnapshot> endpoints, String endpoint) {
+        for (final EndpointMetricsSnapshot snapshot : endpoints) {
+            if (snapshot.getEndpoint().equals(endpoint)) {
+                return snapshot;
+            }
+        }
+        throw new AssertionError("No metrics for " + endpoint);
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+}
@@ -0,0 +1,138 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class LoadBalancingStrategyTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+    private static final List<String> ENDPOINTS = Arrays.asList("host1:1000", "host2:1000", "host3:1000");
+
+    @Test
+    public void testRoundRobinSpreadsFirstChoice() {
+        final LoadBalancer balancer = new LoadBalancer(LoadBalancingStrategy.ROUND_ROBIN);
+
+        assertEquals(ENDPOINTS, balancer.order(SERVICE, ENDPOINTS));
+        assertEquals(Arrays.asList("host2:1000", "host3:1000", "host1:1000"), balancer.order(SERVICE, ENDPOINTS));
+        assertEquals(Arrays.asList("host3:1000", "host1:1000", "host2:1000"), balancer.order(SERVICE, ENDPOINTS));
+        assertEquals(ENDPOINTS, balancer.order(SERVICE, ENDPOINTS));
+    }
+
+    @Test
+    public void testEveryStrategyKeepsAllEndpoints() {
+        for (final LoadBalancingStrategy strategy : LoadBalancingStrategy.values()) {
+            final LoadBalancer balancer = new LoadBalancer(strategy);
+            for (int i = 0; i < 20; i++) {
+                final List<String> ordered = balancer.order(SERVICE, ENDPOINTS);
+                assertEquals(strategy.name(), ENDPOINTS.size(), ordered.size());
+                assertEquals(strategy.name(), new HashSet<>(ENDPOINTS), new HashSet<>(ordered));
+            }
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingPrefersIdleEndpoint() {
+        final LoadBalancer balancer = new LoadBalancer(LoadBalancingStrategy.LEAST_OUTSTANDING);
+        balancer.acquired(new EndpointKey(SERVICE, "host1:1000"));
+        balancer.acquired(new EndpointKey(SERVICE, "host1:1000"));
+        balancer.acquired(new EndpointKey(SERVICE, "host3:1000"));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Arrays.asList("host2:1000", "host3:1000", "host1:1000"), balancer.order(SERVICE, ENDPOINTS));
+        }
+
+        balancer.released(new EndpointKey(SERVICE, "host1:1000"));
+        balancer.released(new EndpointKey(SERVICE, "host1:1000"));
+        assertEquals("host3:1000", balancer.order(SERVICE, ENDPOINTS).get(2));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesAvoidsBusiestEndpoint() {
+        final LoadBalancer balancer = new LoadBalancer(LoadBalancingStrategy.POWER_OF_TWO_CHOICES);
+        balancer.acquired(new EndpointKey(SERVICE, "host1:1000"));
+
+        final Map<String, Integer> firstChoices = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            final String first = balancer.order(SERVICE, ENDPOINTS).get(0);
+            final Integer count = firstChoices.get(first);
+            firstChoices.put(first, count == null ? 1 : count + 1);
+        }
+
+        assertTrue(firstChoices.toString(), !firstChoices.containsKey("host1:1000"));
+        assertEquals(firstChoices.toString(), 2, firstChoices.size());
+    }
+
+    @Test
+    public void testLeastOutstandingWhileCountsChange() throws Exception {
+        final LoadBalancer balancer = new LoadBalancer(LoadBalancingStrategy.LEAST_OUTSTANDING);
+        final List<String> endpoints = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            endpoints.add("host" + i + ":1000");
+        }
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread calls = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; !done.get(); i++) {
+                    final EndpointKey key = new EndpointKey(SERVICE, endpoints.get(i % endpoints.size()));
+                    balancer.acquired(key);
+                    if (i % 3 != 0) {
+                        balancer.released(key);
+                    }
+                }
+            }
+        };
+        calls.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(endpoints.size(), balancer.order(SERVICE, endpoints).size());
+            }
+        } finally {
+            done.set(true);
+            calls.join();
+        }
+    }
+
+    @Test
+    public void testRemovedEndpointsPruned() {
+        final LoadBalancer balancer = new LoadBalancer(LoadBalancingStrategy.LEAST_OUTSTANDING);
+        final EndpointKey host1 = new EndpointKey(SERVICE, "host1:1000");
+        final EndpointKey host2 = new EndpointKey(SERVICE, "host2:1000");
+        balancer.order(SERVICE, ENDPOINTS);
+        balancer.acquired(host1);
+        balancer.acquired(host2);
+        balancer.released(host2);
+        assertEquals(2, balancer.getTrackedEndpoints());
+
+        // host2 is idle so is dropped straight away, host1 once its call finishes
+        balancer.order(SERVICE, Arrays.asList("host3:1000"));
+        assertEquals(1, balancer.getTrackedEndpoints());
+        balancer.released(host1);
+        assertEquals(0, balancer.getTrackedEndpoints());
+        assertEquals(0, balancer.getOutstanding(SERVICE, "host1:1000"));
+    }
+}
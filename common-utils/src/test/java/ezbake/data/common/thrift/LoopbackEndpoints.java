@@ -0,0 +1,87 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+/**
+ * Loopback server sockets for pool tests, and an {@link EndpointCache} that lists them for every service. Nothing
+ * accepts or answers the connections: they complete in the accept backlog, which is all the pool needs.
+ */
+final class LoopbackEndpoints implements Closeable {
+    private final List<ServerSocket> servers = new ArrayList<>();
+    private final List<String> endpoints = new ArrayList<>();
+    private final EndpointCache endpointCache;
+
+    LoopbackEndpoints() throws IOException {
+        this(1);
+    }
+
+    LoopbackEndpoints(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            servers.add(server);
+            endpoints.add(server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+        }
+
+        final List<String> listed = Collections.unmodifiableList(endpoints);
+        endpointCache = new EndpointCache(new EndpointSource() {
+            @Override
+            public List<String> getEndpoints(ServiceKey service) {
+                return listed;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 60000);
+    }
+
+    /**
+     * @return the host:port of each server socket
+     */
+    List<String> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    EndpointCache getEndpointCache() {
+        return endpointCache;
+    }
+
+    ThriftClientPool<EzBakeBaseService.Client> createPool() {
+        return createPool(EzBakeBaseService.Client.class, new ThriftClientPoolConfig());
+    }
+
+    <T extends EzBakeBaseService.Client> ThriftClientPool<T> createPool(Class<T> clientClass,
+            ThriftClientPoolConfig config) {
+        return new ThriftClientPool<>(endpointCache, ThriftClientFactory.forClass(clientClass), config);
+    }
+
+    @Override
+    public void close() throws IOException {
+        endpointCache.close();
+        for (final ServerSocket server : servers) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class ThriftCallBatcherTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    private LoopbackEndpoints endpoints;
+    private ThriftClientPool<EzBakeBaseService.Client> pool;
+    private BatchPolicy policy;
+    private List<List<Integer>> batches;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoints = new LoopbackEndpoints();
+        pool = endpoints.createPool();
+        policy = new BatchPolicy();
+        batches = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+        endpoints.close();
+    }
+
+    @Test
+    public void testFullBatchSentImmediately() throws Exception {
+        policy.setMaxBatchSize(5);
+        policy.setMaxDelayMillis(60000);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(new Doubler())) {
+            final List<ListenableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(batcher.submit(i));
+            }
+
+            assertEquals(Arrays.asList("0", "2", "4", "6", "8"),
+                    Futures.allAsList(futures).get(10, TimeUnit.SECONDS));
+            assertEquals(1, batches.size());
+            assertEquals(5, batches.get(0).size());
+        }
+    }
+
+    @Test
+    public void testPartialBatchSentAfterDelay() throws Exception {
+        policy.setMaxDelayMillis(20);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(new Doubler())) {
+            final ListenableFuture<String> first = batcher.submit(1);
+            final ListenableFuture<String> second = batcher.submit(2);
+
+            assertEquals("2", first.get(10, TimeUnit.SECONDS));
+            assertEquals("4", second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, batches.size());
+        }
+    }
+
+    @Test
+    public void testCloseSendsPendingBatch() throws Exception {
+        policy.setMaxDelayMillis(60000);
+        final ListenableFuture<String> result;
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(new Doubler())) {
+            result = batcher.submit(3);
+        }
+        assertEquals("6", result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailureFailsEveryRequest() throws Exception {
+        policy.setMaxBatchSize(2);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(
+                new ThriftBatchCallback<EzBakeBaseService.Client, Integer, String>() {
+                    @Override
+                    public List<String> call(EzBakeBaseService.Client client, List<Integer> requests)
+                            throws TException {
+                        throw new TException("failed");
+                    }
+                })) {
+            final ListenableFuture<String> first = batcher.submit(1);
+            final ListenableFuture<String> second = batcher.submit(2);
+
+            assertFailed("failed", first);
+            assertFailed("failed", second);
+        }
+    }
+
+    @Test
+    public void testErrorFailsEveryRequest() throws Exception {
+        policy.setMaxBatchSize(2);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(
+                new ThriftBatchCallback<EzBakeBaseService.Client, Integer, String>() {
+                    @Override
+                    public List<String> call(EzBakeBaseService.Client client, List<Integer> requests) {
+                        throw new AssertionError("broken");
+                    }
+                })) {
+            final ListenableFuture<String> first = batcher.submit(1);
+            final ListenableFuture<String> second = batcher.submit(2);
+
+            assertFailed("broken", first);
+            assertFailed("broken", second);
+        }
+    }
+
+    @Test
+    public void testMissingResultsFailBatch() throws Exception {
+        policy.setMaxBatchSize(2);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(
+                new ThriftBatchCallback<EzBakeBaseService.Client, Integer, String>() {
+                    @Override
+                    public List<String> call(EzBakeBaseService.Client client, List<Integer> requests) {
+                        return Collections.singletonList("only one");
+                    }
+                })) {
+            final ListenableFuture<String> first = batcher.submit(1);
+            batcher.submit(2);
+
+            try {
+                first.get(10, TimeUnit.SECONDS);
+                fail("Expected the batch to fail");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof TApplicationException);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterClose() throws Exception {
+        final ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher = createBatcher(new Doubler());
+        batcher.close();
+        batcher.submit(1);
+    }
+
+    @Test
+    public void testRejectedBatchFailsEveryRequest() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.shutdown();
+        policy.setMaxBatchSize(2);
+        try (ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> batcher =
+                new ThriftCallBatcher<>(pool, SERVICE, "double", new Doubler(), policy, executor)) {
+            // A partial batch cannot schedule its delayed send
+            assertRejected(batcher.submit(1));
+
+            // A full batch cannot be sent
+            policy.setMaxBatchSize(1);
+            assertRejected(batcher.submit(2));
+        }
+    }
+
+    private ThriftCallBatcher<EzBakeBaseService.Client, Integer, String> createBatcher(
+            ThriftBatchCallback<EzBakeBaseService.Client, Integer, String> callback) {
+        return new ThriftCallBatcher<>(pool, SERVICE, "double", callback, policy, 2);
+    }
+
+    private static void assertFailed(String message, ListenableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        } catch (final ExecutionException e) {
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+
+    private static void assertRejected(ListenableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    private class Doubler implements ThriftBatchCallback<EzBakeBaseService.Client, Integer, String> {
+        @Override
+        public List<String> call(EzBakeBaseService.Client client, List<Integer> requests) {
+            batches.add(requests);
+            final List<String> results = new ArrayList<>(requests.size());
+            for (final Integer request : requests) {
+                results.add(String.valueOf(request * 2));
+            }
+            return results;
+        }
+    }
+}
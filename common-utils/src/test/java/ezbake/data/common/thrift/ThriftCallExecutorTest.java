@@ -0,0 +1,190 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class ThriftCallExecutorTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    private LoopbackEndpoints endpoints;
+    private ThriftClientPool<EzBakeBaseService.Client> pool;
+    private CallPolicy policy;
+    private ThriftCallExecutor<EzBakeBaseService.Client> executor;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoints = new LoopbackEndpoints(2);
+        pool = endpoints.createPool();
+
+        policy = new CallPolicy();
+        policy.setRetryBackoffMillis(1);
+        executor = new ThriftCallExecutor<>(pool, policy, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.close();
+        pool.close();
+        endpoints.close();
+    }
+
+    @Test
+    public void testIdempotentCallRetriedAfterConnectionError() throws Exception {
+        policy.setIdempotent(true);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = executor.execute(SERVICE, "get", new FailingCallback(attempts, 1,
+                new TTransportException("connection reset")));
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void testNonIdempotentCallNotRetried() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.execute(SERVICE, "put", new FailingCallback(attempts, 1,
+                    new TTransportException("connection reset")));
+            fail("Expected the call to fail");
+        } catch (final TTransportException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void testServiceExceptionNotRetried() throws Exception {
+        policy.setIdempotent(true);
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.execute(SERVICE, "get", new FailingCallback(attempts, 1, new TException("not found")));
+            fail("Expected the call to fail");
+        } catch (final TException e) {
+            assertEquals("not found", e.getMessage());
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void testHandlerErrorNotRetried() throws Exception {
+        policy.setIdempotent(true);
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.execute(SERVICE, "get", new FailingCallback(attempts, 1,
+                    new TApplicationException(TApplicationException.INTERNAL_ERROR, "handler failed")));
+            fail("Expected the call to fail");
+        } catch (final TApplicationException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void testRetriesStopAtMaxRetries() throws Exception {
+        policy.setIdempotent(true);
+        policy.setMaxRetries(2);
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.execute(SERVICE, "get", new FailingCallback(attempts, 10,
+                    new TTransportException("connection reset")));
+            fail("Expected the call to fail");
+        } catch (final TTransportException e) {
+            assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        policy.setDeadlineMillis(100);
+        final long start = System.currentTimeMillis();
+        try {
+            executor.execute(SERVICE, "slow", new SleepingCallback(new AtomicInteger(), 5000, 5000));
+            fail("Expected the deadline to pass");
+        } catch (final TTransportException e) {
+            assertEquals(TTransportException.TIMED_OUT, e.getType());
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    @Test
+    public void testHedgedCallReturnsFirstSuccess() throws Exception {
+        policy.setIdempotent(true);
+        policy.setHedgingEnabled(true);
+        policy.setHedgeDelayMillis(50);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final long start = System.currentTimeMillis();
+        final String result = executor.execute(SERVICE, "get", new SleepingCallback(attempts, 5000, 0));
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    private static class FailingCallback implements ThriftCallback<EzBakeBaseService.Client, String> {
+        private final AtomicInteger attempts;
+        private final int failures;
+        private final TException error;
+
+        FailingCallback(AtomicInteger attempts, int failures, TException error) {
+            this.attempts = attempts;
+            this.failures = failures;
+            this.error = error;
+        }
+
+        @Override
+        public String call(EzBakeBaseService.Client client) throws TException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw error;
+            }
+            return "ok";
+        }
+    }
+
+    private static class SleepingCallback implements ThriftCallback<EzBakeBaseService.Client, String> {
+        private final AtomicInteger attempts;
+        private final long firstSleepMillis;
+        private final long laterSleepMillis;
+
+        SleepingCallback(AtomicInteger attempts, long firstSleepMillis, long laterSleepMillis) {
+            this.attempts = attempts;
+            this.firstSleepMillis = firstSleepMillis;
+            this.laterSleepMillis = laterSleepMillis;
+        }
+
+        @Override
+        public String call(EzBakeBaseService.Client client) throws TException {
+            try {
+                Thread.sleep(attempts.incrementAndGet() == 1 ? firstSleepMillis : laterSleepMillis);
+            } catch (final InterruptedException e) {
+                throw new TException(e);
+            }
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.Test;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class ThriftClientFactoryTest {
+
+    @Test
+    public void testFactoriesAreSharedPerClass() throws Exception {
+        final ThriftClientFactory<TestClient> factory = ThriftClientFactory.forClass(TestClient.class);
+
+        assertSame(factory, ThriftClientFactory.forClass(TestClient.class));
+        assertSame(factory, ThriftClientFactory.forClassName(TestClient.class.getName()));
+        assertSame(EzBakeBaseService.Client.class,
+                ThriftClientFactory.forClass(EzBakeBaseService.Client.class).getClientClass());
+    }
+
+    @Test
+    public void testNewClientUsesProtocol() throws Exception {
+        final TProtocol protocol = new TBinaryProtocol(new TMemoryBuffer(16));
+        final TestClient client = ThriftClientFactory.forClass(TestClient.class).newClient(protocol);
+
+        assertSame(protocol, client.getInputProtocol());
+        assertSame(protocol, client.getOutputProtocol());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClassWithoutProtocolConstructor() {
+        ThriftClientFactory.forClass(NoProtocolConstructorClient.class);
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testClassNameOfNonClient() throws Exception {
+        ThriftClientFactory.forClassName(String.class.getName());
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClassName() throws Exception {
+        ThriftClientFactory.forClassName("ezbake.data.common.thrift.NoSuchClient");
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("ThriftClientFactory{" + TestClient.class.getName() + "}",
+                ThriftClientFactory.forClass(TestClient.class).toString());
+    }
+
+    public static class TestClient extends EzBakeBaseService.Client {
+        public TestClient(TProtocol protocol) {
+            super(protocol);
+        }
+    }
+
+    public static class NoProtocolConstructorClient extends EzBakeBaseService.Client {
+        public NoProtocolConstructorClient(TProtocol in, TProtocol out) {
+            super(in, out);
+        }
+    }
+}
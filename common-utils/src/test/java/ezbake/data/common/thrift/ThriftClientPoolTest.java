@@ -0,0 +1,326 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class ThriftClientPoolTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    private LoopbackEndpoints endpoints;
+    private ThriftClientPoolConfig config;
+    private ThriftClientPool<PingClient> pool;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoints = new LoopbackEndpoints();
+        config = new ThriftClientPoolConfig();
+        PingClient.healthy = true;
+        PingClient.pings.set(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+        }
+        endpoints.close();
+    }
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> client = pool.borrowClient(SERVICE);
+        assertTrue(client.isOpen());
+        assertEquals(endpoints.getEndpoints().get(0), client.getEndpoint());
+        assertEquals(1, pool.getNumActive());
+
+        pool.returnClient(client);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        assertTrue(client.isOpen());
+    }
+
+    @Test
+    public void testInvalidatedConnectionClosed() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> client = pool.borrowClient(SERVICE);
+        pool.invalidateClient(client);
+
+        assertFalse(client.isOpen());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+        assertNotSame(client, pool.borrowClient(SERVICE));
+    }
+
+    @Test
+    public void testConnectionErrorInvalidatesClient() throws Exception {
+        config.getCircuitBreakerConfig().setMinimumCalls(2);
+        pool = createPool();
+        final PingClient first = failCall(new TTransportException("connection reset"));
+        final PingClient second = failCall(new TTransportException("connection reset"));
+
+        assertNotSame(first, second);
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(CircuitBreaker.State.OPEN, pool.getCircuitState(SERVICE, endpoints.getEndpoints().get(0)));
+    }
+
+    @Test
+    public void testServiceErrorKeepsConnection() throws Exception {
+        config.getCircuitBreakerConfig().setMinimumCalls(2);
+        pool = createPool();
+        final PingClient first = failCall(new TApplicationException(TApplicationException.INTERNAL_ERROR, "handler"));
+        final PingClient second = failCall(new TApplicationException(TApplicationException.UNKNOWN_METHOD, "get"));
+
+        assertSame(first, second);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitState(SERVICE, endpoints.getEndpoints().get(0)));
+    }
+
+    @Test
+    public void testCallbackRuntimeExceptionKeepsConnection() throws Exception {
+        config.getCircuitBreakerConfig().setMinimumCalls(2);
+        pool = createPool();
+        final PingClient first = failCall(new NullPointerException());
+        final PingClient second = failCall(new IllegalStateException());
+
+        assertSame(first, second);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitState(SERVICE, endpoints.getEndpoints().get(0)));
+    }
+
+    @Test
+    public void testCallbackErrorDiscardsConnection() throws Exception {
+        config.getCircuitBreakerConfig().setMinimumCalls(2);
+        pool = createPool();
+        final PingClient first = failCall(new AssertionError("callback bug"));
+        final PingClient second = failCall(new StackOverflowError());
+
+        assertNotSame(first, second);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitState(SERVICE, endpoints.getEndpoints().get(0)));
+    }
+
+    @Test
+    public void testOnlyCallTimeCountsAsSlow() throws Exception {
+        final CircuitBreakerConfig breakerConfig = config.getCircuitBreakerConfig();
+        breakerConfig.setMinimumCalls(2);
+        breakerConfig.setSlowCallMillis(50);
+        breakerConfig.setSlowCallRateThreshold(0.5);
+        pool = createPool();
+        final String endpoint = endpoints.getEndpoints().get(0);
+
+        // Time the caller holds a borrowed client for is its own
+        for (int i = 0; i < 2; i++) {
+            final PooledThriftClient<PingClient> client = pool.borrowClient(SERVICE);
+            Thread.sleep(100);
+            pool.returnClient(client);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitState(SERVICE, endpoint));
+
+        for (int i = 0; i < 2; i++) {
+            pool.execute(SERVICE, new ThriftCallback<PingClient, Void>() {
+                @Override
+                public Void call(PingClient client) throws TException {
+                    try {
+                        Thread.sleep(100);
+                    } catch (final InterruptedException e) {
+                        throw new TException(e);
+                    }
+                    return null;
+                }
+            });
+        }
+        assertEquals(CircuitBreaker.State.OPEN, pool.getCircuitState(SERVICE, endpoint));
+    }
+
+    @Test
+    public void testInterruptedBorrowNotCounted() throws Exception {
+        config.setMaxTotalPerKey(1);
+        config.setMaxWaitMillis(-1);
+        config.getCircuitBreakerConfig().setMinimumCalls(1);
+        pool = createPool();
+        final PooledThriftClient<PingClient> held = pool.borrowClient(SERVICE);
+
+        Thread.currentThread().interrupt();
+        try {
+            pool.borrowClient(SERVICE);
+            fail("Expected the borrow to be interrupted");
+        } catch (final TException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getCircuitState(SERVICE, endpoints.getEndpoints().get(0)));
+        pool.returnClient(held);
+    }
+
+    @Test
+    public void testConnectionErrors() {
+        assertTrue(ThriftClientPool.isConnectionError(new TTransportException()));
+        assertTrue(ThriftClientPool.isConnectionError(new TProtocolException()));
+        assertTrue(ThriftClientPool.isConnectionError(
+                new TApplicationException(TApplicationException.BAD_SEQUENCE_ID)));
+        assertTrue(ThriftClientPool.isConnectionError(new TApplicationException(TApplicationException.MISSING_RESULT)));
+        assertTrue(ThriftClientPool.isConnectionError(new TApplicationException(TApplicationException.PROTOCOL_ERROR)));
+        assertFalse(ThriftClientPool.isConnectionError(
+                new TApplicationException(TApplicationException.INTERNAL_ERROR)));
+        assertFalse(ThriftClientPool.isConnectionError(new TException("not found")));
+    }
+
+    @Test
+    public void testRecentlyUsedConnectionNotPinged() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> first = pool.borrowClient(SERVICE);
+        pool.returnClient(first);
+
+        assertSame(first, pool.borrowClient(SERVICE));
+        assertEquals(0, PingClient.pings.get());
+    }
+
+    @Test
+    public void testClosedConnectionReplaced() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> first = pool.borrowClient(SERVICE);
+        pool.returnClient(first);
+        first.close();
+
+        final PooledThriftClient<PingClient> second = pool.borrowClient(SERVICE);
+        assertNotSame(first, second);
+        assertTrue(second.isOpen());
+    }
+
+    @Test
+    public void testUnhealthyIdleConnectionClosedInBackground() throws Exception {
+        config.setHealthCheckIntervalMillis(0);
+        config.setTimeBetweenEvictionRunsMillis(20);
+        pool = createPool();
+        final PooledThriftClient<PingClient> client = pool.borrowClient(SERVICE);
+        pool.returnClient(client);
+        PingClient.healthy = false;
+
+        for (int i = 0; i < 250 && pool.getNumIdle() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, pool.getNumIdle());
+        assertFalse(client.isOpen());
+        assertTrue(PingClient.pings.get() > 0);
+    }
+
+    @Test
+    public void testIdleConnectionsCheckedAfterInvalidation() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> broken = pool.borrowClient(SERVICE);
+        final PooledThriftClient<PingClient> idle = pool.borrowClient(SERVICE);
+        pool.returnClient(idle);
+
+        PingClient.healthy = false;
+        pool.invalidateClient(broken);
+
+        // The idle connection is pinged and discarded, and its replacement is new so is not pinged
+        final PooledThriftClient<PingClient> replacement = pool.borrowClient(SERVICE);
+        assertNotSame(idle, replacement);
+        assertFalse(idle.isOpen());
+        assertEquals(1, PingClient.pings.get());
+    }
+
+    @Test
+    public void testMetricsRecorded() throws Exception {
+        pool = createPool();
+        final PooledThriftClient<PingClient> borrowed = pool.borrowClient(SERVICE);
+        pool.execute(SERVICE, "ping", new ThriftCallback<PingClient, Boolean>() {
+            @Override
+            public Boolean call(PingClient client) {
+                return client.ping();
+            }
+        });
+
+        final InMemoryThriftClientMetrics metrics = (InMemoryThriftClientMetrics) pool.getMetrics();
+        final EndpointMetricsSnapshot endpoint = metrics.getEndpoints().get(0);
+        assertEquals(2, endpoint.getConnectLatency().getCount());
+        assertEquals(2, endpoint.getPoolWait().getCount());
+        assertEquals(1, endpoint.getInFlight());
+        assertEquals(1, endpoint.getCallLatency().getCount());
+        assertEquals("ping", metrics.getMethods().get(0).getMethod());
+
+        pool.returnClient(borrowed);
+        assertEquals(0, metrics.getEndpoints().get(0).getInFlight());
+    }
+
+    /**
+     * Makes a call that throws the given exception.
+     *
+     * @return the client the call was made with
+     */
+    private PingClient failCall(final Throwable error) throws Exception {
+        final PingClient[] used = new PingClient[1];
+        try {
+            pool.execute(SERVICE, new ThriftCallback<PingClient, Void>() {
+                @Override
+                public Void call(PingClient client) throws TException {
+                    used[0] = client;
+                    if (error instanceof TException) {
+                        throw (TException) error;
+                    }
+                    if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw (RuntimeException) error;
+                }
+            });
+            fail("Expected the call to fail");
+        } catch (final TException | RuntimeException | Error e) {
+            assertSame(error, e);
+        }
+        return used[0];
+    }
+
+    private ThriftClientPool<PingClient> createPool() {
+        return endpoints.createPool(PingClient.class, config);
+    }
+
+    public static class PingClient extends EzBakeBaseService.Client {
+        static volatile boolean healthy;
+        static final AtomicInteger pings = new AtomicInteger();
+
+        public PingClient(TProtocol protocol) {
+            super(protocol);
+        }
+
+        @Override
+        public boolean ping() {
+            pings.incrementAndGet();
+            return healthy;
+        }
+    }
+}
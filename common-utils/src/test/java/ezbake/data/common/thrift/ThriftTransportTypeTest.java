@@ -0,0 +1,98 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.data.common.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TTransport;
+import org.junit.Test;
+
+import ezbake.base.thrift.EzBakeBaseService;
+
+public class ThriftTransportTypeTest {
+    private static final ServiceKey SERVICE = new ServiceKey("app", "dataset");
+
+    @Test
+    public void testRoundTripForEveryProtocolAndTransport() throws Exception {
+        final ThriftConnectionConfig config = new ThriftConnectionConfig();
+        config.setBufferSize(64);
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            for (final ThriftTransportType transportType : ThriftTransportType.values()) {
+                for (final ThriftProtocolType protocolType : ThriftProtocolType.values()) {
+                    final String message = transportType + "/" + protocolType;
+
+                    try (Socket clientSocket = new Socket(server.getInetAddress(), server.getLocalPort());
+                         Socket serverSocket = server.accept()) {
+                        final TTransport clientTransport = transportType.wrap(clientSocket, config);
+                        final TTransport serverTransport = transportType.wrap(serverSocket, config);
+                        assertTrue(message, clientTransport.isOpen());
+
+                        final TProtocol out = protocolType.getProtocol(clientTransport);
+                        out.writeI32(42);
+                        out.writeString(message);
+                        out.getTransport().flush();
+
+                        final TProtocol in = protocolType.getProtocol(serverTransport);
+                        assertEquals(message, 42, in.readI32());
+                        assertEquals(message, in.readString());
+
+                        clientTransport.close();
+                        serverTransport.close();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTcpNoDelayKept() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            for (final boolean tcpNoDelay : new boolean[] {false, true}) {
+                final ThriftConnectionConfig config = new ThriftConnectionConfig();
+                config.setTcpNoDelay(tcpNoDelay);
+
+                for (final ThriftTransportType transportType : ThriftTransportType.values()) {
+                    try (Socket clientSocket = new Socket(server.getInetAddress(), server.getLocalPort());
+                         Socket serverSocket = server.accept()) {
+                        clientSocket.setTcpNoDelay(tcpNoDelay);
+                        transportType.wrap(clientSocket, config);
+                        assertEquals(transportType.name(), tcpNoDelay, clientSocket.getTcpNoDelay());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPooledConnectionKeepsTcpNoDelay() throws Exception {
+        final ThriftClientPoolConfig config = new ThriftClientPoolConfig();
+        config.getConnectionConfig().setTcpNoDelay(false);
+        try (LoopbackEndpoints endpoints = new LoopbackEndpoints();
+             ThriftClientPool<EzBakeBaseService.Client> pool =
+                     endpoints.createPool(EzBakeBaseService.Client.class, config)) {
+            final PooledThriftClient<EzBakeBaseService.Client> client = pool.borrowClient(SERVICE);
+            assertFalse(client.getSocket().getTcpNoDelay());
+            pool.returnClient(client);
+        }
+    }
+}